@@ -0,0 +1,233 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml.bench;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import dk.hippogrif.prettyxml.*;
+
+/**
+ * Measures throughput and allocation of {@link PrettyPrint#execute(Properties)}
+ * for the built-in settings on generated documents of various sizes and shapes.<p>
+ * Configured by system properties
+ * <ul>
+ * <li>bench.settings - built-in settings separated by , (default all)</li>
+ * <li>bench.shapes - deep, wide, attributes and/or text separated by , (default all)</li>
+ * <li>bench.sizes - document sizes with suffix K, M or G separated by , (default 1K,64K,1M,16M)</li>
+ * <li>bench.time - seconds to measure each case after warmup (default 5)</li>
+ * <li>bench.stream - TRUE to prettyprint without building a document</li>
+ * <li>bench.dir - directory for generated documents and output (default tmp)</li>
+ * </ul>
+ * Run with "ant bench", e.g., ant bench -Dbench.sizes=1G -Dbench.shapes=wide.
+ * Allocation is measured on a Java 6+ HotSpot VM and shown as n/a otherwise.
+ * The documents are made by {@link CorpusGenerator} and kept in bench.dir.
+ */
+public class Benchmark {
+
+  private static Object threadBean;
+  private static Method allocatedBytes;
+  private static long threadId;
+
+  static {
+    // com.sun.management.ThreadMXBean is looked up by reflection to build on jdk 1.4
+    try {
+      Class c = Class.forName("java.lang.management.ManagementFactory");
+      threadBean = c.getMethod("getThreadMXBean", new Class[0]).invoke(null, new Object[0]);
+      Class sun = Class.forName("com.sun.management.ThreadMXBean");
+      if (sun.isInstance(threadBean)) {
+        allocatedBytes = sun.getMethod("getThreadAllocatedBytes", new Class[]{long.class});
+        Method getId = Thread.class.getMethod("getId", new Class[0]);
+        threadId = ((Long)getId.invoke(Thread.currentThread(), new Object[0])).longValue();
+      }
+    } catch (Exception e) {
+      allocatedBytes = null;
+    }
+  }
+
+  private File dir;
+  private long time;
+  private boolean stream;
+
+  public Benchmark(File dir, long time, boolean stream) {
+    this.dir = dir;
+    this.time = time;
+    this.stream = stream;
+  }
+
+  /**
+   * Get bytes allocated by the current thread or -1 if not available.
+   */
+  static long allocated() {
+    if (allocatedBytes == null) {
+      return -1;
+    }
+    try {
+      return ((Long)allocatedBytes.invoke(threadBean, new Object[]{new Long(threadId)})).longValue();
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parse size with optional suffix K, M or G.
+   */
+  static long parseSize(String s) {
+    s = s.trim().toUpperCase();
+    long unit = 1;
+    if (s.endsWith("K")) {
+      unit = 1024;
+    } else if (s.endsWith("M")) {
+      unit = 1024 * 1024;
+    } else if (s.endsWith("G")) {
+      unit = 1024 * 1024 * 1024;
+    }
+    if (unit > 1) {
+      s = s.substring(0, s.length()-1);
+    }
+    return Long.parseLong(s) * unit;
+  }
+
+  /**
+   * Get generator of a document shape.
+   */
+  static CorpusGenerator generator(String shape, long size) {
+    CorpusGenerator generator = new CorpusGenerator(shape.hashCode()).setSize(size);
+    if ("deep".equals(shape)) {
+      generator.setDepth(64).setFanOut(1).setAttributes(1).setTextRatio(0.1);
+    } else if ("wide".equals(shape)) {
+      generator.setDepth(1).setAttributes(1).setTextLength(5);
+    } else if ("attributes".equals(shape)) {
+      generator.setDepth(1).setAttributes(20).setTextRatio(0);
+    } else if ("text".equals(shape)) {
+      generator.setDepth(1).setAttributes(0).setTextLength(3000).setCDATARatio(0.1);
+    } else {
+      throw new IllegalArgumentException("unknown shape "+shape);
+    }
+    return generator;
+  }
+
+  /**
+   * Generate a document of about size bytes and the given shape
+   * unless already present.
+   */
+  File document(String shape, long size) throws IOException {
+    File file = new File(dir, "bench-"+shape+"-"+size+".xml");
+    if (!file.isFile() || file.length() < size) {
+      generator(shape, size).generate(file);
+    }
+    return file;
+  }
+
+  /**
+   * Run one case and print a line of results.
+   */
+  void run(String setting, String shape, long size) throws Exception {
+    File input = document(shape, size);
+    File output = new File(dir, "bench-out.xml");
+    Properties prop = (Properties)PrettyPrint.getSetting(setting).clone();
+    prop.setProperty(PrettyPrint.INPUT, input.getPath());
+    prop.setProperty(PrettyPrint.OUTPUT, output.getPath());
+    if (stream) {
+      prop.setProperty(PrettyPrint.STREAM, "true");
+    }
+    String name = setting+(stream ? "/stream" : "")+" "+shape+" "+size;
+    try {
+      // warmup for a third of the measuring time
+      long end = System.currentTimeMillis() + time / 3;
+      do {
+        PrettyPrint.execute((Properties)prop.clone());
+      } while (System.currentTimeMillis() < end);
+      int n = 0;
+      long alloc = allocated();
+      long start = System.currentTimeMillis();
+      long elapsed;
+      do {
+        PrettyPrint.execute((Properties)prop.clone());
+        n++;
+        elapsed = System.currentTimeMillis() - start;
+      } while (elapsed < time || n < 3);
+      alloc = alloc < 0 ? -1 : allocated() - alloc;
+      double mb = (double)input.length() * n / (1024 * 1024);
+      StringBuffer sb = new StringBuffer(name);
+      sb.append(": ").append(format(mb * 1000 / elapsed)).append(" MB/s");
+      sb.append(", ").append(n).append(" runs");
+      if (alloc < 0) {
+        sb.append(", allocated n/a");
+      } else {
+        sb.append(", allocated ").append(format((double)alloc / n / (1024 * 1024))).append(" MB/run");
+        sb.append(" (").append(format((double)alloc / (1024 * 1024) / mb)).append(" per input byte)");
+      }
+      System.out.println(sb);
+    } catch (OutOfMemoryError e) {
+      System.out.println(name+": out of memory");
+    } finally {
+      output.delete();
+    }
+  }
+
+  static String format(double d) {
+    long l = Math.round(d * 100);
+    String s = String.valueOf(l % 100);
+    return (l / 100) + "." + (s.length() < 2 ? "0"+s : s);
+  }
+
+  private static String[] split(String s) {
+    String[] sa = s.split(",");
+    for (int i=0; i<sa.length; i++) {
+      sa[i] = sa[i].trim();
+    }
+    return sa;
+  }
+
+  public static void main(String[] args) {
+    try {
+      String[] settings = System.getProperty("bench.settings") == null
+          ? PrettyPrint.getSettings() : split(System.getProperty("bench.settings"));
+      String[] shapes = split(System.getProperty("bench.shapes", "deep,wide,attributes,text"));
+      String[] sizes = split(System.getProperty("bench.sizes", "1K,64K,1M,16M"));
+      long time = 1000 * Long.parseLong(System.getProperty("bench.time", "5"));
+      boolean stream = "true".equalsIgnoreCase(System.getProperty("bench.stream"));
+      File dir = new File(System.getProperty("bench.dir", "tmp"));
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("cannot create directory "+dir);
+      }
+      Benchmark bench = new Benchmark(dir, time, stream);
+      System.out.println("prettyxml "+PrettyPrint.getVersion()+" on java "+System.getProperty("java.version")
+          +", max heap "+Runtime.getRuntime().maxMemory() / (1024 * 1024)+" MB");
+      for (int i=0; i<sizes.length; i++) {
+        long size = parseSize(sizes[i]);
+        for (int j=0; j<shapes.length; j++) {
+          for (int k=0; k<settings.length; k++) {
+            if (PrettyPrint.getSetting(settings[k]) == null) {
+              throw new Exception("unknown setting "+settings[k]);
+            }
+            bench.run(settings[k], shapes[j], size);
+          }
+        }
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,244 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.IOException;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Log handler publishing records to another handler from a background
+ * thread so logging never waits for io.<p>
+ * Records are kept in a bounded ring buffer - when it is full the oldest
+ * record is dropped and counted. Messages longer than the max length are
+ * truncated when published. The other handler is made by {@link #open}
+ * on the background thread when the first record is published, so, e.g.,
+ * a log file is not created until something is logged.
+ */
+public class AsyncHandler extends Handler {
+
+  private Handler target;
+  private LogRecord[] ring;
+  private int head;
+  private int count;
+  private long dropped;
+  private int maxMessageLength = 2000;
+  private Thread thread;
+  private boolean busy;
+  private boolean closed;
+
+  /**
+   * Create handler publishing to target.
+   *
+   * @param target handler to publish to
+   * @param capacity max no of records waiting to be published
+   */
+  public AsyncHandler(Handler target, int capacity) {
+    this(capacity);
+    this.target = target;
+  }
+
+  /**
+   * Create handler publishing to the handler made by open.
+   *
+   * @param capacity max no of records waiting to be published
+   */
+  protected AsyncHandler(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    ring = new LogRecord[capacity];
+  }
+
+  /**
+   * Make the handler to publish to - called once on the background thread.
+   *
+   * @throws IOException if the handler cannot be made
+   */
+  protected Handler open() throws IOException {
+    return target;
+  }
+
+  /**
+   * Set max no of characters of messages, longer ones are truncated - default 2000.
+   */
+  public synchronized void setMaxMessageLength(int max) {
+    maxMessageLength = max;
+  }
+
+  public synchronized int getMaxMessageLength() {
+    return maxMessageLength;
+  }
+
+  /**
+   * Get no of records dropped because the buffer was full.
+   */
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Queue record - never waits for the record to be published.
+   */
+  public void publish(LogRecord record) {
+    if (!isLoggable(record)) {
+      return;
+    }
+    // infer the caller here as it is unknown on the background thread
+    record.getSourceClassName();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (count == ring.length) {
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+        dropped++;
+      }
+      ring[(head + count) % ring.length] = record;
+      count++;
+      if (thread == null) {
+        thread = new Thread("prettyxml-log") {
+          public void run() {
+            drain();
+          }
+        };
+        thread.setDaemon(true);
+        thread.start();
+      }
+      notifyAll();
+    }
+  }
+
+  private void drain() {
+    Handler handler = null;
+    try {
+      handler = open();
+    } catch (Exception e) {
+      reportError("cannot open log handler", e, ErrorManager.OPEN_FAILURE);
+    }
+    synchronized (this) {
+      target = handler;
+    }
+    while (true) {
+      LogRecord record;
+      int max;
+      synchronized (this) {
+        busy = false;
+        notifyAll();
+        while (count == 0 && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (count == 0) {
+          return;
+        }
+        record = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+        busy = true;
+        max = maxMessageLength;
+      }
+      String message = record.getMessage();
+      if (message != null && message.length() > max) {
+        record = truncate(record, message.substring(0, max)+"... ("+message.length()+" chars)");
+      }
+      if (handler != null) {
+        try {
+          handler.publish(record);
+        } catch (RuntimeException e) {
+          reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy record with new message as other handlers may have the record too.
+   */
+  private static LogRecord truncate(LogRecord record, String message) {
+    LogRecord copy = new LogRecord(record.getLevel(), message);
+    copy.setLoggerName(record.getLoggerName());
+    copy.setMillis(record.getMillis());
+    copy.setParameters(record.getParameters());
+    copy.setResourceBundle(record.getResourceBundle());
+    copy.setResourceBundleName(record.getResourceBundleName());
+    copy.setSequenceNumber(record.getSequenceNumber());
+    copy.setSourceClassName(record.getSourceClassName());
+    copy.setSourceMethodName(record.getSourceMethodName());
+    copy.setThreadID(record.getThreadID());
+    copy.setThrown(record.getThrown());
+    return copy;
+  }
+
+  /**
+   * Wait until the queued records are published and flush them.
+   */
+  public void flush() {
+    Handler handler;
+    synchronized (this) {
+      while ((count > 0 || busy) && thread != null && thread.isAlive()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      handler = target;
+    }
+    if (handler != null) {
+      handler.flush();
+    }
+  }
+
+  /**
+   * Publish the queued records and close the other handler.
+   */
+  public void close() {
+    Thread t;
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      t = thread;
+    }
+    if (t != null) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    Handler handler;
+    synchronized (this) {
+      handler = target;
+    }
+    if (handler != null) {
+      handler.close();
+    }
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.util.List;
+
+import org.jdom.Attribute;
+import org.xml.sax.Attributes;
+
+/**
+ * The sorted order of a list of attributes given by their names.
+ * Orders are kept in a cache of lists seen before so attributes are
+ * sorted without allocating. Instances are immutable so a cache can be
+ * shared by threads without locking.
+ */
+final class AttributeOrder {
+
+  /**
+   * Size of a cache - a power of 2.
+   */
+  static final int CACHE = 256;
+
+  private final int hash;
+  private final String[] prefixes;
+  private final String[] names;
+  // positions in the list in print order
+  final int[] permutation;
+
+  private AttributeOrder(int hash, String[] prefixes, String[] names) {
+    int size = names.length;
+    this.hash = hash;
+    this.prefixes = prefixes;
+    this.names = names;
+    permutation = new int[size];
+    // insertion sort as attribute lists are short
+    for (int i=0; i<size; i++) {
+      int j = i;
+      while (j > 0 && compare(permutation[j-1], i) > 0) {
+        permutation[j] = permutation[j-1];
+        j--;
+      }
+      permutation[j] = i;
+    }
+  }
+
+  /**
+   * Get the order of JDOM attributes by qualified name.
+   */
+  static AttributeOrder get(AttributeOrder[] cache, List attributes) {
+    int size = attributes.size();
+    int hash = 0;
+    for (int i=0; i<size; i++) {
+      Attribute attribute = (Attribute)attributes.get(i);
+      hash = 31 * (31 * hash + attribute.getNamespacePrefix().hashCode())
+          + attribute.getName().hashCode();
+    }
+    int slot = hash & (cache.length - 1);
+    AttributeOrder order = cache[slot];
+    if (order == null || !order.matches(hash, attributes)) {
+      String[] prefixes = new String[size];
+      String[] names = new String[size];
+      for (int i=0; i<size; i++) {
+        Attribute attribute = (Attribute)attributes.get(i);
+        prefixes[i] = attribute.getNamespacePrefix();
+        names[i] = attribute.getName();
+      }
+      order = new AttributeOrder(hash, prefixes, names);
+      cache[slot] = order;
+    }
+    return order;
+  }
+
+  /**
+   * Get the order of SAX attributes by qualified name - the permutation
+   * gives positions in indexes.
+   *
+   * @param indexes of the attributes in atts
+   * @param size no of indexes
+   */
+  static AttributeOrder get(AttributeOrder[] cache, Attributes atts, int[] indexes, int size) {
+    int hash = 0;
+    for (int i=0; i<size; i++) {
+      hash = 31 * 31 * hash + atts.getQName(indexes[i]).hashCode();
+    }
+    int slot = hash & (cache.length - 1);
+    AttributeOrder order = cache[slot];
+    if (order == null || !order.matches(hash, atts, indexes, size)) {
+      String[] prefixes = new String[size];
+      String[] names = new String[size];
+      for (int i=0; i<size; i++) {
+        // the qualified name is kept whole
+        prefixes[i] = "";
+        names[i] = atts.getQName(indexes[i]);
+      }
+      order = new AttributeOrder(hash, prefixes, names);
+      cache[slot] = order;
+    }
+    return order;
+  }
+
+  private boolean matches(int hash, List attributes) {
+    if (this.hash != hash || names.length != attributes.size()) {
+      return false;
+    }
+    for (int i=0; i<names.length; i++) {
+      Attribute attribute = (Attribute)attributes.get(i);
+      if (!names[i].equals(attribute.getName()) ||
+          !prefixes[i].equals(attribute.getNamespacePrefix())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matches(int hash, Attributes atts, int[] indexes, int size) {
+    if (this.hash != hash || names.length != size) {
+      return false;
+    }
+    for (int i=0; i<size; i++) {
+      if (prefixes[i].length() != 0 || !names[i].equals(atts.getQName(indexes[i]))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compare qualified names of attributes a and b as
+   * String.compareTo without building the names.
+   */
+  private int compare(int a, int b) {
+    int la = length(a);
+    int lb = length(b);
+    int n = Math.min(la, lb);
+    for (int i=0; i<n; i++) {
+      int c = charAt(a, i) - charAt(b, i);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return la - lb;
+  }
+
+  private int length(int a) {
+    int n = prefixes[a].length();
+    return n == 0 ? names[a].length() : n + 1 + names[a].length();
+  }
+
+  private char charAt(int a, int i) {
+    int n = prefixes[a].length();
+    if (n == 0) {
+      return names[a].charAt(i);
+    } else if (i < n) {
+      return prefixes[a].charAt(i);
+    } else if (i == n) {
+      return ':';
+    }
+    return names[a].charAt(i - n - 1);
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output of a prettyprint written through a FileChannel
+ * to a file or to standard output, or written to a given stream or writer.<p>
+ * A file is emptied when opened, may be preallocated to the expected size
+ * and is truncated to the size written when closed or aborted. Standard output is written through
+ * its file descriptor, bypassing System.out, and is flushed but not closed
+ * as is a given stream or writer.
+ */
+final class ChannelOutput {
+
+  private static final PrintStream stdout = System.out;
+
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private OutputStream out;
+  private Writer writer;
+
+  private ChannelOutput(RandomAccessFile file, FileChannel channel) {
+    this.file = file;
+    this.channel = channel;
+  }
+
+  /**
+   * Open file for output - its old content is discarded.
+   *
+   * @param preallocate expected no of bytes to reserve, 0 for none
+   */
+  static ChannelOutput open(File file, long preallocate) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(preallocate > 0 ? preallocate : 0);
+      return new ChannelOutput(raf, raf.getChannel());
+    } catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Get output to a stream.
+   */
+  static ChannelOutput stream(OutputStream out) {
+    ChannelOutput output = new ChannelOutput(null, null);
+    output.out = out;
+    return output;
+  }
+
+  /**
+   * Get output to a writer.
+   */
+  static ChannelOutput writer(Writer writer) {
+    ChannelOutput output = new ChannelOutput(null, null);
+    output.writer = writer;
+    return output;
+  }
+
+  /**
+   * Get output to standard output - through its file descriptor
+   * unless System.out has been replaced.
+   */
+  static ChannelOutput stdout() {
+    if (System.out != stdout) {
+      return stream(System.out);
+    }
+    // what has been printed to System.out goes first
+    System.out.flush();
+    return new ChannelOutput(null, new FileOutputStream(FileDescriptor.out).getChannel());
+  }
+
+  /**
+   * Get writer encoding to the channel or stream, or the given writer.
+   *
+   * @param size of buffer in bytes
+   * @throws UnsupportedEncodingException if the encoding is unknown
+   */
+  Writer getWriter(String encoding, int size) throws UnsupportedEncodingException {
+    if (writer == null) {
+      writer = out != null
+          ? EncodingWriter.makeWriter(out, encoding)
+          : EncodingWriter.makeWriter(channel, encoding, size);
+    }
+    return writer;
+  }
+
+  /**
+   * Flush what is written and close the file after truncating it.
+   */
+  void close() throws IOException {
+    try {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (file != null) {
+        channel.truncate(channel.position());
+      }
+    } finally {
+      if (file != null) {
+        file.close();
+        file = null;
+      }
+    }
+  }
+
+  /**
+   * Close file without flushing unless already closed - truncated to what
+   * has been written so no preallocated bytes are left.
+   */
+  void abort() {
+    if (file != null) {
+      try {
+        channel.truncate(channel.position());
+      } catch (IOException e) {
+      }
+      try {
+        file.close();
+      } catch (IOException e) {
+      }
+      file = null;
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the chars of a CharSequence in place - e.g., a StringBuffer or
+ * a CharBuffer - without copying it to a String first.
+ */
+final class CharSequenceReader extends Reader {
+
+  private CharSequence chars;
+  private int next;
+  private int mark;
+
+  CharSequenceReader(CharSequence chars) {
+    this.chars = chars;
+  }
+
+  public int read() throws IOException {
+    ensureOpen();
+    return next < chars.length() ? chars.charAt(next++) : -1;
+  }
+
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    ensureOpen();
+    if (len == 0) {
+      return 0;
+    }
+    int n = Math.min(len, chars.length() - next);
+    if (n <= 0) {
+      return -1;
+    }
+    for (int i=0; i<n; i++) {
+      cbuf[off + i] = chars.charAt(next + i);
+    }
+    next += n;
+    return n;
+  }
+
+  public long skip(long n) throws IOException {
+    ensureOpen();
+    int skipped = (int)Math.max(0, Math.min(n, chars.length() - next));
+    next += skipped;
+    return skipped;
+  }
+
+  public boolean ready() throws IOException {
+    ensureOpen();
+    return true;
+  }
+
+  public boolean markSupported() {
+    return true;
+  }
+
+  public void mark(int readAheadLimit) throws IOException {
+    ensureOpen();
+    mark = next;
+  }
+
+  public void reset() throws IOException {
+    ensureOpen();
+    next = mark;
+  }
+
+  public void close() {
+    chars = null;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (chars == null) {
+      throw new IOException("reader closed");
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.util.*;
+
+import org.jdom.*;
+import org.xml.sax.*;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reports a document as SAX events as JDOM's SAXOutputter without DTD events,
+ * walking the elements with a stack of open elements instead of recursing
+ * so documents of any depth can be passed to a stylesheet.
+ */
+final class DocumentWalker {
+
+  // SAX types of the JDOM attribute types
+  private static final String[] TYPES = {
+    "CDATA", "CDATA", "ID", "IDREF", "IDREFS", "ENTITY",
+    "ENTITIES", "NMTOKEN", "NMTOKENS", "NOTATION", "NMTOKEN"
+  };
+
+  private ContentHandler content;
+  private LexicalHandler lexical;
+  // namespaces in scope, the innermost last
+  private ArrayList namespaces = new ArrayList();
+  private AttributesImpl atts = new AttributesImpl();
+
+  private DocumentWalker(ContentHandler content, LexicalHandler lexical) {
+    this.content = content;
+    this.lexical = lexical;
+  }
+
+  /**
+   * Report document to the handlers.
+   *
+   * @param lexical handler of comments and CDATA sections, may be null
+   */
+  static void walk(Document doc, ContentHandler content, LexicalHandler lexical) throws SAXException {
+    DocumentWalker walker = new DocumentWalker(content, lexical);
+    content.startDocument();
+    List list = doc.getContent();
+    for (int i=0; i<list.size(); i++) {
+      Object node = list.get(i);
+      if (node instanceof Element) {
+        walker.element((Element)node);
+      } else if (!(node instanceof DocType)) {
+        walker.node(node);
+      }
+    }
+    content.endDocument();
+  }
+
+  private void element(Element root) throws SAXException {
+    Element[] elements = new Element[16];
+    // index of the next content and size of the namespaces before each element
+    int[] indexes = new int[16];
+    int[] scopes = new int[16];
+    int depth = 0;
+    elements[0] = root;
+    scopes[0] = start(root);
+    while (depth >= 0) {
+      Element element = elements[depth];
+      List list = element.getContent();
+      if (indexes[depth] == list.size()) {
+        end(element, scopes[depth]);
+        elements[depth] = null;
+        indexes[depth] = 0;
+        depth--;
+        continue;
+      }
+      Object node = list.get(indexes[depth]++);
+      if (!(node instanceof Element)) {
+        node(node);
+        continue;
+      }
+      if (++depth == elements.length) {
+        Element[] e = new Element[depth * 2];
+        System.arraycopy(elements, 0, e, 0, depth);
+        elements = e;
+        int[] i = new int[depth * 2];
+        System.arraycopy(indexes, 0, i, 0, depth);
+        indexes = i;
+        i = new int[depth * 2];
+        System.arraycopy(scopes, 0, i, 0, depth);
+        scopes = i;
+      }
+      elements[depth] = (Element)node;
+      scopes[depth] = start((Element)node);
+    }
+  }
+
+  /**
+   * Report start of element with the namespaces it declares.
+   *
+   * @return size of the namespaces in scope before the element
+   */
+  private int start(Element element) throws SAXException {
+    int scope = namespaces.size();
+    Namespace ns = element.getNamespace();
+    if (ns != Namespace.XML_NAMESPACE) {
+      declare(ns);
+    }
+    List additional = element.getAdditionalNamespaces();
+    for (int i=0; i<additional.size(); i++) {
+      declare((Namespace)additional.get(i));
+    }
+    atts.clear();
+    List attributes = element.getAttributes();
+    for (int i=0; i<attributes.size(); i++) {
+      Attribute a = (Attribute)attributes.get(i);
+      int type = a.getAttributeType();
+      atts.addAttribute(a.getNamespaceURI(), a.getName(), a.getQualifiedName(),
+          TYPES[type < 0 || type >= TYPES.length ? 0 : type], a.getValue());
+    }
+    content.startElement(element.getNamespaceURI(), element.getName(), element.getQualifiedName(), atts);
+    return scope;
+  }
+
+  private void declare(Namespace ns) throws SAXException {
+    String prefix = ns.getPrefix();
+    for (int i=namespaces.size()-1; i>=0; i--) {
+      Namespace in = (Namespace)namespaces.get(i);
+      if (in.getPrefix().equals(prefix)) {
+        if (in.getURI().equals(ns.getURI())) {
+          return;
+        }
+        break;
+      }
+    }
+    namespaces.add(ns);
+    content.startPrefixMapping(prefix, ns.getURI());
+  }
+
+  private void end(Element element, int scope) throws SAXException {
+    content.endElement(element.getNamespaceURI(), element.getName(), element.getQualifiedName());
+    for (int i=namespaces.size()-1; i>=scope; i--) {
+      content.endPrefixMapping(((Namespace)namespaces.remove(i)).getPrefix());
+    }
+  }
+
+  /**
+   * Report content other than elements.
+   */
+  private void node(Object node) throws SAXException {
+    if (node instanceof CDATA) {
+      if (lexical != null) {
+        lexical.startCDATA();
+      }
+      characters(((CDATA)node).getText());
+      if (lexical != null) {
+        lexical.endCDATA();
+      }
+    } else if (node instanceof Text) {
+      characters(((Text)node).getText());
+    } else if (node instanceof ProcessingInstruction) {
+      ProcessingInstruction pi = (ProcessingInstruction)node;
+      content.processingInstruction(pi.getTarget(), pi.getData());
+    } else if (node instanceof Comment) {
+      if (lexical != null) {
+        char[] c = ((Comment)node).getText().toCharArray();
+        lexical.comment(c, 0, c.length);
+      }
+    } else if (node instanceof EntityRef) {
+      content.skippedEntity(((EntityRef)node).getName());
+    }
+  }
+
+  private void characters(String text) throws SAXException {
+    char[] c = text.toCharArray();
+    content.characters(c, 0, c.length);
+  }
+
+}
@@ -0,0 +1,456 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.*;
+
+import org.jdom.*;
+
+/**
+ * Sorts attributes and child elements of a JDOM document in place
+ * as done by the built-in stylesheets sort-attributes and sort-elements.<p>
+ * Attributes are sorted by qualified name.
+ * Child elements are sorted by a list of key rules separated by ; where
+ * <ul>
+ * <li>name - the qualified name of the element</li>
+ * <li>attributes - the qualified name followed by the value of each attribute in turn</li>
+ * <li>@name - the value of the named attribute</li>
+ * <li>text - the text of the element and its descendants</li>
+ * </ul>
+ * The keys are computed once per element before its children are sorted
+ * and compared with the collator of the default locale as done by xsl:sort.
+ * Elements with equal keys keep their order and other content is placed
+ * before the elements in document order.
+ * Very large lists of siblings are sorted on several threads.
+ */
+public class ElementSorter {
+
+  /**
+   * Key rules of the built-in stylesheet sort-elements.
+   */
+  public static final String ELEMENT_KEYS = "name;attributes;text";
+
+  /**
+   * Key rules of the sample stylesheet sort-text.
+   */
+  public static final String TEXT_KEYS = "text";
+
+  private static final int NAME = 0;
+  private static final int ATTRIBUTES = 1;
+  private static final int ATTRIBUTE = 2;
+  private static final int TEXT = 3;
+
+  private boolean sortAttributes;
+  private int[] rules;
+  private String[] attributeNames;
+  private int parallelThreshold = 10000;
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * An element or attribute with its precomputed sort keys.
+   */
+  private static class Keyed {
+    Object content;
+    Object[] keys;
+
+    Keyed(Object content, Object[] keys) {
+      this.content = content;
+      this.keys = keys;
+    }
+  }
+
+  /**
+   * Create sorter.
+   *
+   * @param sortAttributes sort the attributes of all elements
+   * @param keys rules for sorting child elements separated by ; - null for none
+   * @throws IllegalArgumentException if unknown rule
+   */
+  public ElementSorter(boolean sortAttributes, String keys) {
+    this.sortAttributes = sortAttributes;
+    String[] sa = keys == null ? new String[0] : keys.split(";");
+    ArrayList list = new ArrayList();
+    ArrayList names = new ArrayList();
+    for (int i=0; i<sa.length; i++) {
+      String s = sa[i].trim();
+      if (s.length() == 0) {
+        continue;
+      } else if ("name".equals(s)) {
+        list.add(new Integer(NAME));
+      } else if ("attributes".equals(s)) {
+        list.add(new Integer(ATTRIBUTES));
+      } else if ("text".equals(s)) {
+        list.add(new Integer(TEXT));
+      } else if (s.startsWith("@") && s.length() > 1) {
+        list.add(new Integer(ATTRIBUTE));
+        names.add(s.substring(1));
+        continue;
+      } else {
+        throw new IllegalArgumentException("unknown sort key "+s);
+      }
+      names.add(null);
+    }
+    rules = new int[list.size()];
+    for (int i=0; i<rules.length; i++) {
+      rules[i] = ((Integer)list.get(i)).intValue();
+    }
+    attributeNames = (String[])names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Set the no of siblings from which sorting is done on several threads.
+   */
+  public void setParallelThreshold(int parallelThreshold) {
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  /**
+   * Set the no of threads used for very large lists of siblings.
+   */
+  public void setThreads(int threads) {
+    this.threads = threads < 1 ? 1 : threads;
+  }
+
+  /**
+   * Sort document in place.
+   *
+   * @return the document
+   */
+  public Document sort(Document doc) {
+    if (doc.hasRootElement()) {
+      sort(doc.getRootElement());
+    }
+    return doc;
+  }
+
+  /**
+   * Sort element and its descendants in place.
+   */
+  public void sort(Element element) {
+    Collator collator = Collator.getInstance();
+    Map values = text() ? values(element) : null;
+    LinkedList stack = new LinkedList();
+    stack.add(element);
+    while (!stack.isEmpty()) {
+      Element e = (Element)stack.removeLast();
+      if (sortAttributes && e.getAttributes().size() > 1) {
+        sortAttributes(e, collator);
+      }
+      if (rules.length > 0) {
+        sortChildren(e, collator, values);
+      }
+      stack.addAll(e.getChildren());
+    }
+  }
+
+  private void sortAttributes(Element element, Collator collator) {
+    List attributes = element.getAttributes();
+    Keyed[] keyed = new Keyed[attributes.size()];
+    for (int i=0; i<keyed.length; i++) {
+      Attribute attribute = (Attribute)attributes.get(i);
+      keyed[i] = new Keyed(attribute, new Object[]{collator.getCollationKey(attribute.getQualifiedName())});
+    }
+    Arrays.sort(keyed, COMPARATOR);
+    ArrayList sorted = new ArrayList(keyed.length);
+    for (int i=0; i<keyed.length; i++) {
+      sorted.add(keyed[i].content);
+    }
+    attributes.clear();
+    element.setAttributes(sorted);
+  }
+
+  private void sortChildren(Element element, Collator collator, Map values) {
+    if (!mayChange(element.getContent())) {
+      return;
+    }
+    List content = element.removeContent();
+    ArrayList sorted = new ArrayList(content.size());
+    ArrayList elements = new ArrayList();
+    Text text = null;
+    StringBuffer sb = null;
+    for (Iterator iter = content.iterator(); iter.hasNext(); ) {
+      Object o = iter.next();
+      if (o instanceof Element) {
+        elements.add(o);
+      } else if (text != null && isText(o)) {
+        // text brought together by moving the elements is joined
+        if (sb == null) {
+          sb = new StringBuffer(text.getText());
+        }
+        sb.append(((Text)o).getText());
+      } else {
+        if (sb != null) {
+          text.setText(sb.toString());
+          sb = null;
+        }
+        text = isText(o) ? (Text)o : null;
+        sorted.add(o);
+      }
+    }
+    if (sb != null) {
+      text.setText(sb.toString());
+    }
+    Keyed[] keyed = new Keyed[elements.size()];
+    if (keyed.length == 1) {
+      // nothing to compare
+      keyed[0] = new Keyed(elements.get(0), null);
+    } else if (keyed.length < parallelThreshold || threads < 2) {
+      sort(elements, keyed, 0, keyed.length, collator, values);
+    } else {
+      sortParallel(elements, keyed, collator, values);
+    }
+    for (int i=0; i<keyed.length; i++) {
+      sorted.add(keyed[i].content);
+    }
+    element.setContent(sorted);
+  }
+
+  /**
+   * Check whether content may change when sorted - i.e., other content
+   * follows an element or there is more than one element.
+   */
+  private static boolean mayChange(List content) {
+    boolean element = false;
+    for (int i=0; i<content.size(); i++) {
+      if (content.get(i) instanceof Element) {
+        if (element) {
+          return true;
+        }
+        element = true;
+      } else if (element) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isText(Object o) {
+    return o instanceof Text && !(o instanceof CDATA);
+  }
+
+  /**
+   * Compute keys of and sort a range of elements.
+   */
+  private void sort(List elements, Keyed[] keyed, int from, int to, Collator collator, Map values) {
+    for (int i=from; i<to; i++) {
+      Element e = (Element)elements.get(i);
+      keyed[i] = new Keyed(e, keys(e, collator, values));
+    }
+    Arrays.sort(keyed, from, to, COMPARATOR);
+  }
+
+  private void sortParallel(final List elements, final Keyed[] keyed, final Collator collator, final Map values) {
+    int n = Math.min(threads, keyed.length);
+    final int chunk = (keyed.length + n - 1) / n;
+    Thread[] workers = new Thread[n];
+    for (int i=0; i<n; i++) {
+      final int from = Math.min(i * chunk, keyed.length);
+      final int to = Math.min(from + chunk, keyed.length);
+      workers[i] = new Thread(new Runnable() {
+        public void run() {
+          // collators are not threadsafe
+          sort(elements, keyed, from, to, (Collator)collator.clone(), values);
+        }
+      }, "prettyxml-sort-"+i);
+      workers[i].start();
+    }
+    boolean interrupted = false;
+    for (int i=0; i<n; i++) {
+      try {
+        workers[i].join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+        i--;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    Keyed[] src = keyed;
+    Keyed[] dst = new Keyed[keyed.length];
+    for (int width = chunk; width < keyed.length; width *= 2) {
+      for (int lo = 0; lo < keyed.length; lo += 2 * width) {
+        merge(src, dst, lo, Math.min(lo + width, keyed.length), Math.min(lo + 2 * width, keyed.length));
+      }
+      Keyed[] tmp = src;
+      src = dst;
+      dst = tmp;
+    }
+    if (src != keyed) {
+      System.arraycopy(src, 0, keyed, 0, keyed.length);
+    }
+  }
+
+  /**
+   * Stable merge of the sorted ranges [lo,mid[ and [mid,hi[.
+   */
+  private static void merge(Keyed[] src, Keyed[] dst, int lo, int mid, int hi) {
+    int i = lo;
+    int j = mid;
+    for (int k=lo; k<hi; k++) {
+      if (j >= hi || (i < mid && COMPARATOR.compare(src[i], src[j]) <= 0)) {
+        dst[k] = src[i++];
+      } else {
+        dst[k] = src[j++];
+      }
+    }
+  }
+
+  private Object[] keys(Element element, Collator collator, Map values) {
+    Object[] keys = new Object[rules.length];
+    for (int i=0; i<rules.length; i++) {
+      switch (rules[i]) {
+        case NAME:
+          keys[i] = collator.getCollationKey(element.getQualifiedName());
+          break;
+        case ATTRIBUTES:
+          List attributes = element.getAttributes();
+          CollationKey[] ck = new CollationKey[attributes.size()];
+          for (int j=0; j<ck.length; j++) {
+            Attribute attribute = (Attribute)attributes.get(j);
+            ck[j] = collator.getCollationKey(attribute.getQualifiedName()+attribute.getValue());
+          }
+          keys[i] = ck;
+          break;
+        case ATTRIBUTE:
+          String value = attributeValue(element, attributeNames[i]);
+          keys[i] = collator.getCollationKey(value == null ? "" : value);
+          break;
+        case TEXT:
+          keys[i] = collator.getCollationKey((String)values.get(element));
+          break;
+      }
+    }
+    return keys;
+  }
+
+  private boolean text() {
+    for (int i=0; i<rules.length; i++) {
+      if (rules[i] == TEXT) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the text of each element with sorted siblings as Element.getValue
+   * before sorting, collected bottom-up in one pass without recursion
+   * as getValue recurses and is repeated for every ancestor.
+   */
+  private static Map values(Element root) {
+    HashMap values = new HashMap();
+    StringBuffer sb = new StringBuffer();
+    Element[] elements = new Element[16];
+    // index of the next content, start of the text and whether the
+    // children are sorted for each element on the stack
+    int[] indexes = new int[16];
+    int[] starts = new int[16];
+    boolean[] sorted = new boolean[16];
+    int depth = 0;
+    elements[0] = root;
+    sorted[0] = root.getChildren().size() > 1;
+    while (depth >= 0) {
+      Element element = elements[depth];
+      List content = element.getContent();
+      if (indexes[depth] == content.size()) {
+        if (depth > 0 && sorted[depth-1]) {
+          values.put(element, sb.substring(starts[depth]));
+        }
+        elements[depth] = null;
+        indexes[depth] = 0;
+        depth--;
+        continue;
+      }
+      Object o = content.get(indexes[depth]++);
+      if (o instanceof Text) {
+        sb.append(((Text)o).getText());
+      } else if (o instanceof Element) {
+        if (++depth == elements.length) {
+          Element[] e = new Element[depth * 2];
+          System.arraycopy(elements, 0, e, 0, depth);
+          elements = e;
+          int[] i = new int[depth * 2];
+          System.arraycopy(indexes, 0, i, 0, depth);
+          indexes = i;
+          i = new int[depth * 2];
+          System.arraycopy(starts, 0, i, 0, depth);
+          starts = i;
+          boolean[] b = new boolean[depth * 2];
+          System.arraycopy(sorted, 0, b, 0, depth);
+          sorted = b;
+        }
+        elements[depth] = (Element)o;
+        starts[depth] = sb.length();
+        sorted[depth] = ((Element)o).getChildren().size() > 1;
+      }
+    }
+    return values;
+  }
+
+  private static String attributeValue(Element element, String qualifiedName) {
+    List attributes = element.getAttributes();
+    for (int i=0; i<attributes.size(); i++) {
+      Attribute attribute = (Attribute)attributes.get(i);
+      if (qualifiedName.equals(attribute.getQualifiedName())) {
+        return attribute.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compares precomputed keys rule by rule where a missing attribute
+   * compares as the empty string.
+   */
+  private static final Comparator COMPARATOR = new Comparator() {
+    public int compare(Object o1, Object o2) {
+      Object[] k1 = ((Keyed)o1).keys;
+      Object[] k2 = ((Keyed)o2).keys;
+      for (int i=0; i<k1.length; i++) {
+        int c;
+        if (k1[i] instanceof CollationKey) {
+          c = ((CollationKey)k1[i]).compareTo((CollationKey)k2[i]);
+        } else {
+          c = compare((CollationKey[])k1[i], (CollationKey[])k2[i]);
+        }
+        if (c != 0) {
+          return c;
+        }
+      }
+      return 0;
+    }
+
+    private int compare(CollationKey[] ck1, CollationKey[] ck2) {
+      int n = Math.min(ck1.length, ck2.length);
+      for (int i=0; i<n; i++) {
+        int c = ck1[i].compareTo(ck2[i]);
+        if (c != 0) {
+          return c;
+        }
+      }
+      // an empty string is less than any other
+      return ck1.length - ck2.length;
+    }
+  };
+
+}
@@ -0,0 +1,290 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.HashMap;
+
+import org.jdom.output.EscapeStrategy;
+
+/**
+ * Unsynchronized writer encoding UTF-8 or ISO-8859-1 directly into
+ * a reusable byte buffer, used instead of a BufferedWriter on an
+ * OutputStreamWriter for the encodings of prettyxml.properties.
+ * The buffer is written to a stream or a channel.
+ * Chars that cannot be encoded are written as ? as OutputStreamWriter does.<p>
+ * Also makes escape strategies deciding from a precomputed table whether
+ * a char must be written as a character reference.
+ */
+final class EncodingWriter extends Writer {
+
+  private static final int UTF_8 = 0;
+  private static final int ISO_8859_1 = 1;
+
+  private static final int SIZE = 32768;
+
+  // replaced when an encoding is added so lookups take no lock
+  private static volatile HashMap strategies = new HashMap();
+
+  private OutputStream out;
+  private WritableByteChannel channel;
+  private ByteBuffer byteBuffer;
+  private int encoding;
+  private byte[] buf;
+  private int count;
+  private char highSurrogate;
+
+  private EncodingWriter(OutputStream out, int encoding) {
+    this.out = out;
+    this.encoding = encoding;
+    buf = new byte[SIZE];
+  }
+
+  private EncodingWriter(WritableByteChannel channel, int encoding, int size) {
+    this.channel = channel;
+    this.encoding = encoding;
+    buf = new byte[Math.max(size, 16)];
+    byteBuffer = ByteBuffer.wrap(buf);
+  }
+
+  /**
+   * Make a buffered writer for the stream in the given encoding.
+   *
+   * @throws UnsupportedEncodingException if the encoding is unknown
+   */
+  static Writer makeWriter(OutputStream out, String encoding)
+      throws UnsupportedEncodingException {
+    if (isUTF8(encoding)) {
+      return new EncodingWriter(out, UTF_8);
+    } else if (isLatin1(encoding)) {
+      return new EncodingWriter(out, ISO_8859_1);
+    }
+    return new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream(out), encoding));
+  }
+
+  /**
+   * Make a writer for the channel in the given encoding
+   * buffering the given no of bytes.
+   *
+   * @throws UnsupportedEncodingException if the encoding is unknown
+   */
+  static Writer makeWriter(WritableByteChannel channel, String encoding, int size)
+      throws UnsupportedEncodingException {
+    if (isUTF8(encoding)) {
+      return new EncodingWriter(channel, UTF_8, size);
+    } else if (isLatin1(encoding)) {
+      return new EncodingWriter(channel, ISO_8859_1, size);
+    }
+    return new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), encoding), size);
+  }
+
+  private static boolean isUTF8(String encoding) {
+    return "UTF-8".equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding);
+  }
+
+  private static boolean isLatin1(String encoding) {
+    return "ISO-8859-1".equalsIgnoreCase(encoding) || "Latin1".equalsIgnoreCase(encoding);
+  }
+
+  /**
+   * Get escape strategy for an encoding - escaping the same chars
+   * as JDOM's default strategy but looked up in a table computed once.
+   * The strategies are immutable and shared by all threads.
+   */
+  static EscapeStrategy getEscapeStrategy(String encoding) {
+    String key = encoding.toUpperCase();
+    EscapeStrategy strategy = (EscapeStrategy)strategies.get(key);
+    if (strategy == null) {
+      strategy = new TableEscapeStrategy(encoding);
+      synchronized (EncodingWriter.class) {
+        HashMap map = new HashMap(strategies);
+        map.put(key, strategy);
+        strategies = map;
+      }
+    }
+    return strategy;
+  }
+
+  /**
+   * Escapes chars from a limit and, when the charset is neither
+   * UTF, Latin1 nor ASCII, the chars below it its encoder cannot encode.
+   */
+  private static class TableEscapeStrategy implements EscapeStrategy {
+    private int limit;
+    private long[] escaped;
+
+    TableEscapeStrategy(String encoding) {
+      if (isUTF8(encoding) || "UTF-16".equalsIgnoreCase(encoding)) {
+        limit = 0x10000;
+      } else if (isLatin1(encoding)) {
+        limit = 0x100;
+      } else if ("US-ASCII".equalsIgnoreCase(encoding) || "ASCII".equalsIgnoreCase(encoding)) {
+        limit = 0x80;
+      } else {
+        limit = 0x10000;
+        try {
+          CharsetEncoder encoder = Charset.forName(encoding).newEncoder();
+          escaped = new long[0x10000 / 64];
+          for (int ch = 0; ch < 0x10000; ch++) {
+            if (!encoder.canEncode((char)ch)) {
+              escaped[ch >> 6] |= 1L << ch;
+            }
+          }
+        } catch (Exception e) {
+          // nothing is escaped if the encoding is unknown as in JDOM
+          escaped = null;
+        }
+      }
+    }
+
+    public boolean shouldEscape(char ch) {
+      if (ch >= limit) {
+        return true;
+      }
+      return escaped != null && (escaped[ch >> 6] & (1L << ch)) != 0;
+    }
+  }
+
+  public void write(int c) throws IOException {
+    if (count + 4 > buf.length) {
+      flushBuffer();
+    }
+    encode((char)c);
+  }
+
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    for (int end = off + len; off < end; ) {
+      if (count + 4 > buf.length) {
+        flushBuffer();
+      }
+      // as many chars as surely fit in the buffer
+      int n = Math.min(end, off + (buf.length - count) / 4);
+      for (; off < n; off++) {
+        encode(cbuf[off]);
+      }
+    }
+  }
+
+  public void write(String str, int off, int len) throws IOException {
+    for (int end = off + len; off < end; ) {
+      if (count + 4 > buf.length) {
+        flushBuffer();
+      }
+      int n = Math.min(end, off + (buf.length - count) / 4);
+      for (; off < n; off++) {
+        encode(str.charAt(off));
+      }
+    }
+  }
+
+  public void write(String str) throws IOException {
+    write(str, 0, str.length());
+  }
+
+  /**
+   * Encode a char into the buffer which has room for at least 4 bytes.
+   */
+  private void encode(char c) {
+    if (c < 0x80 && highSurrogate == 0) {
+      buf[count++] = (byte)c;
+      return;
+    }
+    if (highSurrogate != 0) {
+      char high = highSurrogate;
+      highSurrogate = 0;
+      if (c >= 0xdc00 && c <= 0xdfff) {
+        if (encoding == ISO_8859_1) {
+          buf[count++] = '?';
+          return;
+        }
+        int cp = 0x10000 + ((high - 0xd800) << 10) + (c - 0xdc00);
+        buf[count++] = (byte)(0xf0 | (cp >> 18));
+        buf[count++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+        buf[count++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+        buf[count++] = (byte)(0x80 | (cp & 0x3f));
+        return;
+      }
+      // unpaired high surrogate, room is left for c as it takes 3 bytes at most
+      buf[count++] = '?';
+    }
+    if (c >= 0xd800 && c <= 0xdbff) {
+      highSurrogate = c;
+    } else if (c >= 0xdc00 && c <= 0xdfff) {
+      // unpaired low surrogate
+      buf[count++] = '?';
+    } else if (encoding == ISO_8859_1) {
+      buf[count++] = (byte)(c < 0x100 ? c : '?');
+    } else if (c < 0x80) {
+      buf[count++] = (byte)c;
+    } else if (c < 0x800) {
+      buf[count++] = (byte)(0xc0 | (c >> 6));
+      buf[count++] = (byte)(0x80 | (c & 0x3f));
+    } else {
+      buf[count++] = (byte)(0xe0 | (c >> 12));
+      buf[count++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+      buf[count++] = (byte)(0x80 | (c & 0x3f));
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (count > 0) {
+      if (channel != null) {
+        byteBuffer.clear();
+        byteBuffer.limit(count);
+        while (byteBuffer.hasRemaining()) {
+          channel.write(byteBuffer);
+        }
+      } else {
+        out.write(buf, 0, count);
+      }
+      count = 0;
+    }
+  }
+
+  public void flush() throws IOException {
+    flushBuffer();
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  public void close() throws IOException {
+    if (out != null || channel != null) {
+      if (highSurrogate != 0) {
+        highSurrogate = 0;
+        write('?');
+      }
+      flush();
+      if (out != null) {
+        out.close();
+      } else {
+        channel.close();
+      }
+      out = null;
+      channel = null;
+    }
+  }
+
+}
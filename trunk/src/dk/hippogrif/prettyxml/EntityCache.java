@@ -0,0 +1,365 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.xml.sax.*;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Resolves DTDs and external entities without fetching them over the
+ * network for each document.<p>
+ * An entity is first looked up in the OASIS XML catalogs added - the
+ * <code>system</code>, <code>rewriteSystem</code>, <code>systemSuffix</code>
+ * and <code>public</code> entries are used, also within <code>group</code>
+ * and with <code>xml:base</code>, and <code>nextCatalog</code> entries
+ * are loaded too. Otherwise an entity with a system id other than a local
+ * file is read from the cache directory, where it is stored the first time
+ * it is fetched. In offline mode an entity neither in a catalog nor in the
+ * cache is an error instead of being fetched.<p>
+ * The resolver is threadsafe - catalogs should be added before use.
+ */
+public class EntityCache implements EntityResolver {
+
+  private static Logger logger = Logger.getLogger(EntityCache.class.getName());
+
+  private static final String CATALOG_NS = "urn:oasis:names:tc:entity:xmlns:xml:catalog";
+
+  private File dir;
+  private boolean offline;
+  private HashMap system = new HashMap();
+  private HashMap publicIds = new HashMap();
+  // pairs of prefix or suffix and replacement
+  private ArrayList rewrites = new ArrayList();
+  private ArrayList suffixes = new ArrayList();
+  private HashSet catalogs = new HashSet();
+  private long catalogHits;
+  private long hits;
+  private long misses;
+
+  /**
+   * Create resolver.
+   *
+   * @param dir cache directory for fetched entities, null for none
+   */
+  public EntityCache(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Set whether entities not in a catalog or the cache are errors
+   * instead of being fetched - default false.
+   */
+  public synchronized void setOffline(boolean offline) {
+    this.offline = offline;
+  }
+
+  public synchronized boolean isOffline() {
+    return offline;
+  }
+
+  public File getDirectory() {
+    return dir;
+  }
+
+  /**
+   * Add an OASIS XML catalog with the catalogs it refers to.
+   *
+   * @param file holding the catalog
+   * @throws Exception if io error or not a catalog
+   */
+  public void addCatalog(File file) throws Exception {
+    addCatalog(file.toURI().toString());
+  }
+
+  /**
+   * Add an OASIS XML catalog with the catalogs it refers to.
+   *
+   * @param uri of the catalog
+   * @throws Exception if io error or not a catalog
+   */
+  public synchronized void addCatalog(String uri) throws Exception {
+    if (!catalogs.add(uri)) {
+      return;
+    }
+    final ArrayList next = new ArrayList();
+    final LinkedList bases = new LinkedList();
+    bases.add(uri);
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader reader = factory.newSAXParser().getXMLReader();
+    reader.setEntityResolver(new EntityResolver() {
+      public InputSource resolveEntity(String publicId, String systemId) {
+        // the DTD of a catalog is not needed
+        return new InputSource(new StringReader(""));
+      }
+    });
+    reader.setContentHandler(new DefaultHandler() {
+      public void startElement(String ns, String name, String qName, Attributes atts) throws SAXException {
+        String base = (String)bases.getLast();
+        String xmlBase = atts.getValue("xml:base");
+        if (xmlBase != null) {
+          base = resolve(base, xmlBase);
+        }
+        bases.add(base);
+        if (!CATALOG_NS.equals(ns)) {
+          return;
+        }
+        if ("system".equals(name)) {
+          system.put(atts.getValue("systemId"), resolve(base, atts.getValue("uri")));
+        } else if ("public".equals(name)) {
+          publicIds.put(normalize(atts.getValue("publicId")), resolve(base, atts.getValue("uri")));
+        } else if ("rewriteSystem".equals(name)) {
+          rewrites.add(new String[]{atts.getValue("systemIdStartString"), resolve(base, atts.getValue("rewritePrefix"))});
+        } else if ("systemSuffix".equals(name)) {
+          suffixes.add(new String[]{atts.getValue("systemIdSuffix"), resolve(base, atts.getValue("uri"))});
+        } else if ("nextCatalog".equals(name)) {
+          next.add(resolve(base, atts.getValue("catalog")));
+        }
+      }
+
+      public void endElement(String ns, String name, String qName) {
+        bases.removeLast();
+      }
+    });
+    try {
+      reader.parse(uri);
+    } catch (Exception e) {
+      catalogs.remove(uri);
+      throw new Exception("cannot read catalog "+uri+": "+e.getMessage());
+    }
+    for (int i=0; i<next.size(); i++) {
+      addCatalog((String)next.get(i));
+    }
+  }
+
+  private static String resolve(String base, String uri) throws SAXException {
+    if (uri == null) {
+      throw new SAXException("catalog entry without uri");
+    }
+    try {
+      return new URL(new URL(base), uri).toString();
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  /**
+   * Normalize public id as the catalog spec - whitespace collapsed to single spaces.
+   */
+  private static String normalize(String publicId) {
+    StringBuffer sb = new StringBuffer();
+    StringTokenizer st = new StringTokenizer(publicId);
+    while (st.hasMoreTokens()) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(st.nextToken());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Look up entity in the catalogs.
+   *
+   * @return uri of local copy or null if not found
+   */
+  public synchronized String lookup(String publicId, String systemId) {
+    if (systemId != null) {
+      String uri = (String)system.get(systemId);
+      if (uri != null) {
+        return uri;
+      }
+      String[] best = null;
+      for (int i=0; i<rewrites.size(); i++) {
+        String[] rewrite = (String[])rewrites.get(i);
+        if (systemId.startsWith(rewrite[0]) && (best == null || rewrite[0].length() > best[0].length())) {
+          best = rewrite;
+        }
+      }
+      if (best != null) {
+        return best[1] + systemId.substring(best[0].length());
+      }
+      best = null;
+      for (int i=0; i<suffixes.size(); i++) {
+        String[] suffix = (String[])suffixes.get(i);
+        if (systemId.endsWith(suffix[0]) && (best == null || suffix[0].length() > best[0].length())) {
+          best = suffix;
+        }
+      }
+      if (best != null) {
+        return best[1];
+      }
+    }
+    if (publicId != null) {
+      return (String)publicIds.get(normalize(publicId));
+    }
+    return null;
+  }
+
+  /**
+   * Resolve entity from catalog or cache, fetching it to the cache if
+   * not offline - local files not in a catalog are left to the parser.
+   *
+   * @throws SAXException if offline and not found or fetching fails
+   */
+  public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+    String uri = lookup(publicId, systemId);
+    if (uri != null) {
+      count(0);
+      InputSource source = new InputSource(uri);
+      source.setPublicId(publicId);
+      return source;
+    }
+    if (systemId == null || systemId.startsWith("file:")) {
+      return null;
+    }
+    File file = dir == null ? null : new File(dir, cacheName(systemId));
+    if (file != null && file.isFile()) {
+      count(1);
+      return mkSource(publicId, systemId, file);
+    }
+    if (isOffline()) {
+      throw new SAXException("offline and not in catalog or cache: "+systemId);
+    }
+    count(2);
+    if (file == null) {
+      return null;
+    }
+    fetch(systemId, file);
+    return mkSource(publicId, systemId, file);
+  }
+
+  private synchronized void count(int which) {
+    if (which == 0) {
+      catalogHits++;
+    } else if (which == 1) {
+      hits++;
+    } else {
+      misses++;
+    }
+  }
+
+  /**
+   * The original system id is kept so relative references are resolved
+   * against it and cached too.
+   */
+  private static InputSource mkSource(String publicId, String systemId, File file) throws IOException {
+    InputSource source = new InputSource(systemId);
+    source.setPublicId(publicId);
+    source.setByteStream(new BufferedInputStream(new FileInputStream(file)));
+    return source;
+  }
+
+  /**
+   * Fetch to a temporary file renamed when complete so readers
+   * never see a partial entity.
+   */
+  private void fetch(String systemId, File file) throws IOException {
+    if (logger.isLoggable(Level.FINE)) {
+      logger.log(Level.FINE, "fetch "+systemId);
+    }
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("cannot create directory "+dir);
+    }
+    File tmp = File.createTempFile("fetch", ".tmp", dir);
+    InputStream in = null;
+    OutputStream out = null;
+    try {
+      in = new URL(systemId).openStream();
+      out = new FileOutputStream(tmp);
+      byte[] b = new byte[8192];
+      int n;
+      while ((n = in.read(b)) >= 0) {
+        out.write(b, 0, n);
+      }
+      out.close();
+      out = null;
+      if (!tmp.renameTo(file)) {
+        // fetched by another thread meanwhile
+        if (!file.isFile()) {
+          throw new IOException("cannot store "+file);
+        }
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+      IOUtils.closeQuietly(out);
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Get file name in the cache - a digest of the system id
+   * followed by its last segment for recognition.
+   */
+  static String cacheName(String systemId) {
+    StringBuffer sb = new StringBuffer();
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(systemId.getBytes("UTF-8"));
+      for (int i=0; i<digest.length; i++) {
+        sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+        sb.append(Character.forDigit(digest[i] & 0xf, 16));
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    String name = systemId.substring(systemId.lastIndexOf('/')+1);
+    sb.append('-');
+    for (int i=0; i<name.length() && i<64; i++) {
+      char c = name.charAt(i);
+      sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Get no of entities resolved by a catalog.
+   */
+  public synchronized long getCatalogHits() {
+    return catalogHits;
+  }
+
+  /**
+   * Get no of entities read from the cache.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get no of entities fetched as not in a catalog or the cache.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized String toString() {
+    return "EntityCache[dir="+dir+" offline="+offline+" catalogHits="+catalogHits+" hits="+hits+" misses="+misses+"]";
+  }
+
+}
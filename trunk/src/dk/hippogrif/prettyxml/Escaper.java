@@ -0,0 +1,165 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.jdom.output.EscapeStrategy;
+import org.jdom.output.Format;
+
+/**
+ * Writes text, CDATA and attribute values with the text mode of a format
+ * applied and escaped as done by JDOM's XMLOutputter, but without building
+ * new strings - each value is scanned once and the runs between entities
+ * are written directly. Only entities for chars the encoding cannot hold
+ * are allocated.
+ */
+final class Escaper {
+
+  private Escaper() {
+  }
+
+  /**
+   * Write text as XMLOutputter.printString.
+   *
+   * @param escape false if escaping is disabled by a TrAX processing instruction
+   */
+  static void writeText(Writer out, String str, Format format, boolean escape) throws IOException {
+    write(out, str, format, escape ? TEXT : NONE);
+  }
+
+  /**
+   * Write CDATA section as XMLOutputter.printCDATA.
+   */
+  static void writeCDATA(Writer out, String str, Format format) throws IOException {
+    out.write("<![CDATA[");
+    write(out, str, format, NONE);
+    out.write("]]>");
+  }
+
+  /**
+   * Write attribute value escaped as XMLOutputter.escapeAttributeEntities.
+   */
+  static void writeAttribute(Writer out, String str, Format format) throws IOException {
+    escape(out, str, 0, str.length(), ATTRIBUTE, format);
+  }
+
+  private static final int NONE = 0;
+  private static final int TEXT = 1;
+  private static final int ATTRIBUTE = 2;
+
+  private static void write(Writer out, String str, Format format, int kind) throws IOException {
+    int start = 0;
+    int end = str.length();
+    if (format.getTextMode() == Format.TextMode.NORMALIZE) {
+      // words separated by a single space as Text.normalizeString
+      boolean first = true;
+      while (start < end) {
+        while (start < end && isWhitespace(str.charAt(start))) {
+          start++;
+        }
+        int word = start;
+        while (start < end && !isWhitespace(str.charAt(start))) {
+          start++;
+        }
+        if (word < start) {
+          if (!first) {
+            out.write(' ');
+          }
+          escape(out, str, word, start, kind, format);
+          first = false;
+        }
+      }
+      return;
+    } else if (format.getTextMode() == Format.TextMode.TRIM) {
+      // as String.trim
+      while (start < end && str.charAt(start) <= ' ') {
+        start++;
+      }
+      while (start < end && str.charAt(end - 1) <= ' ') {
+        end--;
+      }
+    }
+    escape(out, str, start, end, kind, format);
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  private static void escape(Writer out, String str, int start, int end, int kind, Format format)
+      throws IOException {
+    if (kind == NONE) {
+      out.write(str, start, end - start);
+      return;
+    }
+    EscapeStrategy strategy = format.getEscapeStrategy();
+    int run = start;
+    for (int i = start; i < end; i++) {
+      char ch = str.charAt(i);
+      String entity;
+      switch (ch) {
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        case '&':
+          entity = "&amp;";
+          break;
+        case '\r':
+          entity = "&#xD;";
+          break;
+        case '"':
+          if (kind == TEXT) {
+            continue;
+          }
+          entity = "&quot;";
+          break;
+        case '\t':
+          if (kind == TEXT) {
+            continue;
+          }
+          entity = "&#x9;";
+          break;
+        case '\n':
+          entity = kind == TEXT ? format.getLineSeparator() : "&#xA;";
+          break;
+        default:
+          if (!strategy.shouldEscape(ch)) {
+            continue;
+          }
+          entity = "&#x" + Integer.toHexString(ch) + ";";
+          break;
+      }
+      if (i > run) {
+        out.write(str, run, i - run);
+      }
+      out.write(entity);
+      run = i + 1;
+    }
+    if (run < end) {
+      out.write(str, run, end - run);
+    }
+  }
+
+}
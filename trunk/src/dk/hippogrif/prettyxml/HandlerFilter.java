@@ -0,0 +1,132 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import org.xml.sax.*;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * Passes SAX content and lexical events on to other handlers -
+ * subclasses override the events they check.
+ */
+abstract class HandlerFilter implements ContentHandler, LexicalHandler {
+
+  private ContentHandler content;
+  private LexicalHandler lexical;
+  /** Position in the document parsed, null if not known */
+  Locator locator;
+
+  HandlerFilter(ContentHandler content, LexicalHandler lexical) {
+    this.content = content;
+    this.lexical = lexical;
+  }
+
+  // ContentHandler
+
+  public void setDocumentLocator(Locator locator) {
+    this.locator = locator;
+    content.setDocumentLocator(locator);
+  }
+
+  public void startDocument() throws SAXException {
+    content.startDocument();
+  }
+
+  public void endDocument() throws SAXException {
+    content.endDocument();
+  }
+
+  public void startPrefixMapping(String prefix, String uri) throws SAXException {
+    content.startPrefixMapping(prefix, uri);
+  }
+
+  public void endPrefixMapping(String prefix) throws SAXException {
+    content.endPrefixMapping(prefix);
+  }
+
+  public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+    content.startElement(uri, localName, qName, atts);
+  }
+
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    content.endElement(uri, localName, qName);
+  }
+
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    content.characters(ch, start, length);
+  }
+
+  public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+    content.ignorableWhitespace(ch, start, length);
+  }
+
+  public void processingInstruction(String target, String data) throws SAXException {
+    content.processingInstruction(target, data);
+  }
+
+  public void skippedEntity(String name) throws SAXException {
+    content.skippedEntity(name);
+  }
+
+  // LexicalHandler
+
+  public void startDTD(String name, String publicId, String systemId) throws SAXException {
+    if (lexical != null) {
+      lexical.startDTD(name, publicId, systemId);
+    }
+  }
+
+  public void endDTD() throws SAXException {
+    if (lexical != null) {
+      lexical.endDTD();
+    }
+  }
+
+  public void startEntity(String name) throws SAXException {
+    if (lexical != null) {
+      lexical.startEntity(name);
+    }
+  }
+
+  public void endEntity(String name) throws SAXException {
+    if (lexical != null) {
+      lexical.endEntity(name);
+    }
+  }
+
+  public void startCDATA() throws SAXException {
+    if (lexical != null) {
+      lexical.startCDATA();
+    }
+  }
+
+  public void endCDATA() throws SAXException {
+    if (lexical != null) {
+      lexical.endCDATA();
+    }
+  }
+
+  public void comment(char[] ch, int start, int length) throws SAXException {
+    if (lexical != null) {
+      lexical.comment(ch, start, length);
+    }
+  }
+
+}
@@ -0,0 +1,215 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+
+import org.xml.sax.InputSource;
+
+/**
+ * A prettyprint which may be cancelled, given a deadline and followed
+ * by a {@link ProgressListener}.<p>
+ * The job is checked as input is read, as stylesheets produce output
+ * and as elements are written - when cancelled or past its deadline the
+ * prettyprint fails with an {@link InterruptedIOException}. A stylesheet
+ * looping without producing output cannot be stopped.<p>
+ * A job is for one document at a time, it may be cancelled from any thread.
+ */
+public class Job {
+
+  /** Stage while parsing the document */
+  public static final String PARSE = "parse";
+  /** Stage while transforming the document */
+  public static final String TRANSFORM = "transform";
+  /** Stage while writing the document */
+  public static final String OUTPUT = "output";
+  /** Stage while parsing, transforming and writing at the same time */
+  public static final String STREAM = "stream";
+  /** Stage when the document is written */
+  public static final String DONE = "done";
+
+  // elements written between progress reports
+  private static final int ELEMENTS = 256;
+
+  private ProgressListener listener;
+  private volatile boolean cancelled;
+  private volatile long deadline;
+  private volatile String stage;
+  private volatile long bytesRead;
+  private volatile long elementsWritten;
+  private volatile String stopped;
+
+  public Job() {
+  }
+
+  public Job(ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  public void setListener(ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  public ProgressListener getListener() {
+    return listener;
+  }
+
+  /**
+   * Cancel the job - it stops at the next check.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Set wall-clock time in milliseconds from which the job stops,
+   * 0 for no deadline.
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Set deadline a number of milliseconds from now.
+   */
+  public void setTimeout(long millis) {
+    setDeadline(System.currentTimeMillis() + millis);
+  }
+
+  /**
+   * Get whether the deadline has passed.
+   */
+  public boolean isExpired() {
+    long d = deadline;
+    return d != 0 && System.currentTimeMillis() >= d;
+  }
+
+  /**
+   * Get current stage, null if not started.
+   */
+  public String getStage() {
+    return stage;
+  }
+
+  /**
+   * Get no of bytes read, or characters if the document is read as text.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Get no of elements written.
+   */
+  public long getElementsWritten() {
+    return elementsWritten;
+  }
+
+  /**
+   * Stop if cancelled or past the deadline.
+   *
+   * @throws InterruptedIOException if cancelled or past the deadline
+   */
+  public void check() throws InterruptedIOException {
+    if (cancelled) {
+      stopped = "cancelled";
+    } else if (isExpired()) {
+      stopped = "deadline exceeded";
+    } else {
+      return;
+    }
+    throw new InterruptedIOException(stopped);
+  }
+
+  /**
+   * Reset the counters before a new document.
+   */
+  void start() {
+    bytesRead = 0;
+    elementsWritten = 0;
+    stopped = null;
+    stage = null;
+  }
+
+  /**
+   * Tell the listener the document is written.
+   */
+  void done() {
+    stage = DONE;
+    if (listener != null) {
+      listener.progress(this);
+    }
+  }
+
+  void setStage(String stage) throws InterruptedIOException {
+    this.stage = stage;
+    progress();
+  }
+
+  /**
+   * Tell the job of elements written, it is checked at intervals.
+   */
+  void elementWritten() throws InterruptedIOException {
+    if (++elementsWritten % ELEMENTS == 0) {
+      progress();
+    }
+  }
+
+  private void read(int n) throws InterruptedIOException {
+    bytesRead += n;
+    progress();
+  }
+
+  private void progress() throws InterruptedIOException {
+    check();
+    if (listener != null) {
+      listener.progress(this);
+      check();
+    }
+  }
+
+  /**
+   * Replace exception by the reason the job stopped if it did,
+   * the exception may wrap it many times.
+   */
+  Exception stopped(Exception e) {
+    return stopped != null ? new InterruptedIOException(stopped) : e;
+  }
+
+  /**
+   * Get source whose stream counts what is read and checks the job.
+   */
+  InputSource wrap(InputSource input) {
+    return WatchedInput.wrap(input, new WatchedInput.Watcher() {
+      public void read(int n) throws IOException {
+        Job.this.read(n);
+      }
+    });
+  }
+
+}
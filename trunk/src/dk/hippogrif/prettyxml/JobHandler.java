@@ -0,0 +1,74 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.IOException;
+
+import org.xml.sax.*;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * Passes the output of a stylesheet on checking the job at intervals,
+ * so a stylesheet producing output endlessly is stopped.
+ */
+final class JobHandler extends HandlerFilter {
+
+  // events between checks
+  private static final int EVENTS = 1024;
+
+  private Job job;
+  private int events;
+
+  JobHandler(Job job, ContentHandler content, LexicalHandler lexical) {
+    super(content, lexical);
+    this.job = job;
+  }
+
+  private void event() throws SAXException {
+    if (++events % EVENTS == 0) {
+      try {
+        job.check();
+      } catch (IOException e) {
+        throw new SAXException(e);
+      }
+    }
+  }
+
+  public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+    event();
+    super.startElement(uri, localName, qName, atts);
+  }
+
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    event();
+    super.characters(ch, start, length);
+  }
+
+  public void processingInstruction(String target, String data) throws SAXException {
+    event();
+    super.processingInstruction(target, data);
+  }
+
+  public void comment(char[] ch, int start, int length) throws SAXException {
+    event();
+    super.comment(ch, start, length);
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.util.Properties;
+
+import org.xml.sax.*;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * Limits on documents given by the properties of {@link PropertyNames#LIMIT_KEYS},
+ * so pathological input fails fast with a clear error instead of
+ * exhausting time or memory.
+ */
+final class Limits implements PropertyNames {
+
+  private long maxInputBytes;
+  private long maxDepth;
+  private long maxAttributes;
+  private long maxTextLength;
+  private long maxEntityExpansions;
+
+  private Limits() {
+  }
+
+  /**
+   * Get limits of checked properties, null if no limits.
+   */
+  static Limits get(Properties prop) {
+    Limits limits = new Limits();
+    limits.maxInputBytes = get(prop, MAX_INPUT_BYTES);
+    limits.maxDepth = get(prop, MAX_DEPTH);
+    limits.maxAttributes = get(prop, MAX_ATTRIBUTES);
+    limits.maxTextLength = get(prop, MAX_TEXT_LENGTH);
+    limits.maxEntityExpansions = get(prop, MAX_ENTITY_EXPANSIONS);
+    if (limits.maxInputBytes == 0 && limits.maxDepth == 0 && limits.maxAttributes == 0
+        && limits.maxTextLength == 0 && limits.maxEntityExpansions == 0) {
+      return null;
+    }
+    return limits;
+  }
+
+  private static long get(Properties prop, String key) {
+    String s = prop.getProperty(key);
+    return s == null ? 0 : Long.parseLong(s);
+  }
+
+  /**
+   * Check value of limit property is a positive integer.
+   *
+   * @throws Exception if not
+   */
+  static void check(String key, Properties prop) throws Exception {
+    String s = prop.getProperty(key);
+    if (s != null) {
+      try {
+        if (Long.parseLong(s.trim()) > 0) {
+          prop.setProperty(key, s.trim());
+          return;
+        }
+      } catch (NumberFormatException e) {
+      }
+      throw new Exception(key+" must be a positive integer, was: "+s);
+    }
+  }
+
+  /**
+   * Get max no of entity expansions, 0 if no limit.
+   */
+  long getMaxEntityExpansions() {
+    return maxEntityExpansions;
+  }
+
+  /**
+   * Get whether the input must be read as a stream to be counted.
+   */
+  boolean limitsInput() {
+    return maxInputBytes > 0;
+  }
+
+  /**
+   * Get source whose stream fails when reading more than max input bytes,
+   * or characters if the document is read as text.
+   */
+  InputSource wrap(InputSource input) {
+    if (maxInputBytes == 0) {
+      return input;
+    }
+    return WatchedInput.wrap(input, new WatchedInput.Watcher() {
+      private long count;
+
+      public void read(int n) throws IOException {
+        if ((count += n) > maxInputBytes) {
+          throw new IOException(MAX_INPUT_BYTES+" of "+maxInputBytes+" exceeded");
+        }
+      }
+    });
+  }
+
+  /**
+   * Get handler checking the events of one document before passing them on.
+   */
+  HandlerFilter filter(ContentHandler content, LexicalHandler lexical) {
+    return new Filter(content, lexical);
+  }
+
+  /**
+   * Checks depth, attributes, text length and entity expansions of a document.
+   */
+  private final class Filter extends HandlerFilter {
+    private long depth;
+    private long textLength;
+    private long expansions;
+
+    Filter(ContentHandler content, LexicalHandler lexical) {
+      super(content, lexical);
+    }
+
+    private SAXException error(String key, long max) {
+      return new SAXParseException(key+" of "+max+" exceeded", locator);
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+      textLength = 0;
+      if (maxDepth > 0 && ++depth > maxDepth) {
+        throw error(MAX_DEPTH, maxDepth);
+      }
+      if (maxAttributes > 0 && atts.getLength() > maxAttributes) {
+        throw error(MAX_ATTRIBUTES, maxAttributes);
+      }
+      if (maxTextLength > 0) {
+        for (int i=0; i<atts.getLength(); i++) {
+          if (atts.getValue(i).length() > maxTextLength) {
+            throw error(MAX_TEXT_LENGTH, maxTextLength);
+          }
+        }
+      }
+      super.startElement(uri, localName, qName, atts);
+    }
+
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+      textLength = 0;
+      depth--;
+      super.endElement(uri, localName, qName);
+    }
+
+    public void characters(char[] ch, int start, int length) throws SAXException {
+      if (maxTextLength > 0 && (textLength += length) > maxTextLength) {
+        throw error(MAX_TEXT_LENGTH, maxTextLength);
+      }
+      super.characters(ch, start, length);
+    }
+
+    public void processingInstruction(String target, String data) throws SAXException {
+      textLength = 0;
+      super.processingInstruction(target, data);
+    }
+
+    public void comment(char[] ch, int start, int length) throws SAXException {
+      if (maxTextLength > 0 && length > maxTextLength) {
+        throw error(MAX_TEXT_LENGTH, maxTextLength);
+      }
+      super.comment(ch, start, length);
+    }
+
+    public void startEntity(String name) throws SAXException {
+      // counted by the parser when supported, also in attribute values;
+      // the external DTD subset is reported as an entity too
+      if (maxEntityExpansions > 0 && !"[dtd]".equals(name) && ++expansions > maxEntityExpansions) {
+        throw error(MAX_ENTITY_EXPANSIONS, maxEntityExpansions);
+      }
+      super.startEntity(name);
+    }
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through memory mapped regions, one region at a time,
+ * so files of any size can be read - a single mapping is limited to 2 GB.
+ * A region is unmapped when garbage collected after the next is mapped.
+ */
+final class MappedInputStream extends InputStream {
+
+  /**
+   * Default size of the regions mapped.
+   */
+  static final long REGION = 256L * 1024 * 1024;
+
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private long region;
+  private long size;
+  private long position;
+  private MappedByteBuffer buffer;
+
+  MappedInputStream(File file) throws IOException {
+    this(file, REGION);
+  }
+
+  /**
+   * @param region size in bytes of the regions mapped
+   */
+  MappedInputStream(File file, long region) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    channel = this.file.getChannel();
+    size = channel.size();
+    this.region = Math.min(Math.max(region, 1), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Map next region when the current is read.
+   *
+   * @return false at end of file
+   */
+  private boolean ensure() throws IOException {
+    if (buffer != null && buffer.hasRemaining()) {
+      return true;
+    }
+    if (channel == null) {
+      throw new IOException("stream closed");
+    }
+    if (position >= size) {
+      return false;
+    }
+    long length = Math.min(region, size - position);
+    buffer = null;
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    position += length;
+    return true;
+  }
+
+  public int read() throws IOException {
+    if (!ensure()) {
+      return -1;
+    }
+    return buffer.get() & 0xff;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensure()) {
+      return -1;
+    }
+    int n = Math.min(len, buffer.remaining());
+    buffer.get(b, off, n);
+    return n;
+  }
+
+  public long skip(long n) throws IOException {
+    if (n <= 0 || !ensure()) {
+      return 0;
+    }
+    int skipped = (int)Math.min(n, buffer.remaining());
+    buffer.position(buffer.position() + skipped);
+    return skipped;
+  }
+
+  public int available() throws IOException {
+    if (channel == null) {
+      return 0;
+    }
+    long remaining = size - position + (buffer == null ? 0 : buffer.remaining());
+    return (int)Math.min(remaining, Integer.MAX_VALUE);
+  }
+
+  public void close() throws IOException {
+    if (channel != null) {
+      buffer = null;
+      channel = null;
+      file.close();
+    }
+  }
+
+}
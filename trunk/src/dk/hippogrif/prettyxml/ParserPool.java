@@ -0,0 +1,205 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jdom.Document;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.jdom.input.SAXHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Bounded pools of configured builders and parsers, one pool for each
+ * combination of parser features, so the parser factory lookup and
+ * parser creation are done once and not for each document.
+ * Handlers and entity resolver are set when a parser is taken and
+ * cleared when it is given back, a parser failing is not reused.
+ */
+final class ParserPool {
+
+  static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+  private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+  private static final String ENTITY_EXPANSION_LIMIT = "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit";
+
+  // returns null so the parser reads the entity itself
+  private static final EntityResolver NO_RESOLVER = new EntityResolver() {
+    public InputSource resolveEntity(String publicId, String systemId) {
+      return null;
+    }
+  };
+  private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+  // limit of a new parser, restored when a document has no limit
+  private static volatile Object defaultExpansionLimit;
+
+  private static final ParserPool[] pools = new ParserPool[]{new ParserPool(true), new ParserPool(false)};
+
+  private boolean loadExternalDTD;
+  private int max = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+  private LinkedList builders = new LinkedList();
+  private LinkedList readers = new LinkedList();
+
+  private ParserPool(boolean loadExternalDTD) {
+    this.loadExternalDTD = loadExternalDTD;
+  }
+
+  /**
+   * Get pool of parsers reading the external DTD subset or not.
+   */
+  static ParserPool get(boolean loadExternalDTD) {
+    return pools[loadExternalDTD ? 0 : 1];
+  }
+
+  /**
+   * Builder reusing its parser and keeping it to clear it when given back.
+   */
+  static final class Builder extends SAXBuilder {
+    private XMLReader parser;
+    private Limits limits;
+
+    protected void configureParser(XMLReader parser, SAXHandler handler) throws JDOMException {
+      this.parser = parser;
+      super.configureParser(parser, handler);
+      limit(parser, limits);
+      if (limits != null) {
+        HandlerFilter filter = limits.filter(handler, handler);
+        parser.setContentHandler(filter);
+        try {
+          parser.setProperty(LEXICAL_HANDLER, filter);
+        } catch (SAXException e) {
+          // no entities reported so expansions are not counted
+        }
+      }
+    }
+  }
+
+  /**
+   * Build a document with a pooled builder.
+   *
+   * @param resolver of entities, null for none
+   * @param limits checked while parsing, null for none
+   * @throws JDOMException if parse error or a limit is exceeded
+   * @throws IOException if io error
+   */
+  Document build(InputSource input, EntityResolver resolver, Limits limits) throws JDOMException, IOException {
+    Builder builder = null;
+    synchronized (this) {
+      if (!builders.isEmpty()) {
+        builder = (Builder)builders.removeFirst();
+      }
+    }
+    if (builder == null) {
+      builder = new Builder();
+      builder.setFeature(LOAD_EXTERNAL_DTD, loadExternalDTD);
+    }
+    // always set as the builder does not clear a resolver of its parser
+    builder.setEntityResolver(resolver == null ? NO_RESOLVER : resolver);
+    builder.limits = limits;
+    Document doc = builder.build(input);
+    // the content handler holds the document
+    clear(builder.parser);
+    release(builders, builder);
+    return doc;
+  }
+
+  /**
+   * Take a namespace aware parser configured as by JDOM's SAXBuilder
+   * with no handlers set.
+   *
+   * @param resolver of entities, null for none
+   * @param limits whose entity expansions the parser counts, null for none
+   * @throws Exception if no parser available
+   */
+  XMLReader getReader(EntityResolver resolver, Limits limits) throws Exception {
+    XMLReader reader = null;
+    synchronized (this) {
+      if (!readers.isEmpty()) {
+        reader = (XMLReader)readers.removeFirst();
+      }
+    }
+    if (reader == null) {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setValidating(false);
+      factory.setNamespaceAware(true);
+      reader = factory.newSAXParser().getXMLReader();
+      try {
+        reader.setFeature(LOAD_EXTERNAL_DTD, loadExternalDTD);
+      } catch (SAXException e) {
+        // parser always reads the external DTD subset
+      }
+    }
+    reader.setEntityResolver(resolver == null ? NO_RESOLVER : resolver);
+    limit(reader, limits);
+    return reader;
+  }
+
+  /**
+   * Set the entity expansion limit of the parser - it counts references
+   * in attribute values and the DTD too, which are not reported as entities.
+   */
+  private static void limit(XMLReader parser, Limits limits) {
+    try {
+      if (defaultExpansionLimit == null) {
+        defaultExpansionLimit = parser.getProperty(ENTITY_EXPANSION_LIMIT);
+      }
+      long max = limits == null ? 0 : limits.getMaxEntityExpansions();
+      parser.setProperty(ENTITY_EXPANSION_LIMIT, max > 0 ? String.valueOf(max) : String.valueOf(defaultExpansionLimit));
+    } catch (SAXException e) {
+      // not supported, only references in content are counted
+    }
+  }
+
+  /**
+   * Give back a parser taken by getReader after a successful parse.
+   */
+  void release(XMLReader reader) {
+    clear(reader);
+    release(readers, reader);
+  }
+
+  private synchronized void release(LinkedList list, Object o) {
+    if (list.size() < max) {
+      list.addFirst(o);
+    }
+  }
+
+  private static void clear(XMLReader reader) {
+    if (reader == null) {
+      return;
+    }
+    reader.setContentHandler(NO_HANDLER);
+    reader.setDTDHandler(NO_HANDLER);
+    reader.setErrorHandler(NO_HANDLER);
+    reader.setEntityResolver(NO_RESOLVER);
+    try {
+      reader.setProperty(LEXICAL_HANDLER, null);
+    } catch (SAXException e) {
+      // not supported or null not accepted, kept till next use
+    }
+  }
+
+}
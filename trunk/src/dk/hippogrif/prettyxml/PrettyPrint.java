@@ -24,6 +24,7 @@ import java.net.*;
 import java.util.*;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,21 +35,46 @@ import org.jdom.input.*;
 import org.jdom.output.*;
 import org.jdom.transform.XSLTransformer;
 import org.jdom.transform.XSLTransformException;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 
 /**
  * Prettyprints XML based on JDOM 1.0 according to a set of properties
  * specifying format and options.
- * See {@link dk.hippogrif.prettyxml}.
+ * See {@link dk.hippogrif.prettyxml}.<p>
+ * The static methods may be called by many threads at the same time.
+ * execute works on its own copy of the properties and shares only
+ * immutable or threadsafe objects between calls - the built-in sorters,
+ * the compiled stylesheets of the templates cache and the tables of
+ * escape strategies - whose lookups take no lock once filled.
+ * The wellknown settings are handed out as copies and the wellknown
+ * transformations compile a new Transformer for each use.
+ * Output to standard output from several threads is interleaved.
+ * A {@link PrettyPrinter} avoids checking the properties for each call.
  *
  * @author Jesper Goertz
  */
 public class PrettyPrint implements PropertyNames {
   private static Logger logger = Logger.getLogger(PrettyPrint.class.getName());
   private static String[] encodings;
-  private static String[] settings;
-  private static HashMap setting;
-  private static String[] transformations;
-  private static HashMap transformation;
+  private static volatile String[] settings;
+  private static HashMap setting = new HashMap();
+  private static volatile String[] transformations;
+  private static volatile Set transformationNames = Collections.EMPTY_SET;
+  private static HashMap transformation = new HashMap();
+  private static HashMap sorter = initSorters();
+  private static TemplatesCache templatesCache = new TemplatesCache(32);
+  private static volatile int outputBufferSize = 256 * 1024;
+  private static volatile boolean preallocateOutput;
+  private static volatile long mappedInputThreshold = 32L * 1024 * 1024;
+  private static volatile EntityResolver entityResolver;
+  private static Handler logHandler;
   
   /**
    * Accepted properties (basic and extended).
@@ -62,9 +88,26 @@ public class PrettyPrint implements PropertyNames {
     if (keys == null) throw new RuntimeException("basic keys null");
     keys.addAll(Arrays.asList(EXTENDED_KEYS));
     if (keys == null) throw new RuntimeException("added keys null");
+    keys.addAll(Arrays.asList(LIMIT_KEYS));
     return keys;
   }
   
+  private static HashMap initSorters() {
+    HashMap sorter = new HashMap();
+    sorter.put("sort-attributes", new ElementSorter(true, null));
+    sorter.put("sort-elements", new ElementSorter(false, ElementSorter.ELEMENT_KEYS));
+    return sorter;
+  }
+  
+  /**
+   * Get built-in sort done natively instead of by its stylesheet.
+   *
+   * @return null if not a built-in sort
+   */
+  static ElementSorter getSorter(String name) {
+    return (ElementSorter)sorter.get(name);
+  }
+  
   /**
    * Get prettyxml version.
    */
@@ -93,17 +136,31 @@ public class PrettyPrint implements PropertyNames {
   }
   
   /**
-   * Get wellknown properties setting.
+   * Get copy of wellknown properties setting - loaded on first use.
+   *
+   * @return null if not wellknown
    **/
   public static Properties getSetting(String name) {
-    return (Properties)setting.get(name);
+    synchronized (setting) {
+      Properties props = (Properties)setting.get(name);
+      if (props == null && Arrays.asList(settings).contains(name)) {
+        try {
+          props = loadPropertiesResource(name+".properties");
+          checkProperties(props, false);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+        setting.put(name, props);
+      }
+      return props == null ? null : (Properties)props.clone();
+    }
   }
   
   /**
    * Get default properties setting - the first in configured settings.
    **/
   public static Properties getDefaultSetting() {
-    return (Properties)setting.get(settings[0]);
+    return getSetting(settings[0]);
   }
   
   /**
@@ -114,12 +171,29 @@ public class PrettyPrint implements PropertyNames {
   }
   
   /**
-   * Get wellknown transformation.
+   * Get wellknown transformation - compiled on first use.
+   *
+   * @return null if not wellknown
    **/
   public static XSLTransformer getTransformation(String name) {
-    return (XSLTransformer)transformation.get(name);
+    synchronized (transformation) {
+      XSLTransformer transformer = (XSLTransformer)transformation.get(name);
+      if (transformer == null && transformationNames.contains(name)) {
+        try {
+          transformer = mkTransformerResource(name+".xslt");
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+        transformation.put(name, transformer);
+      }
+      return transformer;
+    }
   }
   
+  /**
+   * Load configuration - the wellknown settings and transformations
+   * are only named here and loaded on first use.
+   */
   static String loadConfiguration(String resource) {
     try {
       Properties prop = loadPropertiesResource(resource);
@@ -127,24 +201,14 @@ public class PrettyPrint implements PropertyNames {
       // logging
       String loggingLevel = prop.getProperty("logging.Level");
       if (loggingLevel != null) {
-        Level level = Level.parse(loggingLevel);
-        Logger l = Logger.getLogger("dk.hippogrif.prettyxml");
-        l.setLevel(level);
-        if ("ConsoleHandler".equals(prop.getProperty("logging.Handler"))) {
-          ConsoleHandler h = new ConsoleHandler();
-          h.setLevel(level);
-          l.addHandler(h);
-        } else if ("FileHandler".equals(prop.getProperty("logging.Handler"))) {
-          FileHandler h = new FileHandler(System.getProperty("user.home")+"/prettyxml.log");
-          h.setLevel(level);
-          l.addHandler(h);
-        }
-        logger.config("logging.Level="+loggingLevel);
+        initLogging(Level.parse(loggingLevel), prop);
       }
       
       // version
       version = prop.getProperty("version", "");
-      logger.config("version="+version);
+      if (logger.isLoggable(Level.CONFIG)) {
+        logger.config("logging.Level="+loggingLevel+" version="+version);
+      }
       
       // wellknown encodings
       String s = prop.getProperty("encodings");
@@ -159,12 +223,8 @@ public class PrettyPrint implements PropertyNames {
         throw new Exception("settings missing in prettyxml.properties");
       }
       settings = s.split(";");
-      setting = new HashMap();
-      for (int i=0; i<settings.length;i++) {
-        String name = settings[i];
-        Properties props = loadPropertiesResource(name+".properties");
-        checkProperties(props, false);
-        setting.put(name, props);
+      synchronized (setting) {
+        setting.clear();
       }
       
       // wellknown transformations
@@ -173,10 +233,9 @@ public class PrettyPrint implements PropertyNames {
         throw new Exception("transformations missing in prettyxml.properties");
       }
       transformations = s.split(";");
-      transformation = new HashMap();
-      for (int i=0; i<transformations.length;i++) {
-        String name = transformations[i];
-        transformation.put(name, mkTransformerResource(name+".xslt"));
+      synchronized (transformation) {
+        transformationNames = new HashSet(Arrays.asList(transformations));
+        transformation.clear();
       }
     } catch(Exception e) {
       throw new RuntimeException(e);
@@ -184,6 +243,42 @@ public class PrettyPrint implements PropertyNames {
     return version;
   }
   
+  /**
+   * Set level and handler of the prettyxml loggers replacing the handler
+   * set before - the handler is asynchronous if logging.Async is true
+   * and then the log file is not created until something is logged.
+   */
+  private static synchronized void initLogging(Level level, Properties prop) throws IOException {
+    Logger l = Logger.getLogger("dk.hippogrif.prettyxml");
+    l.setLevel(level);
+    if (logHandler != null) {
+      l.removeHandler(logHandler);
+      logHandler.close();
+      logHandler = null;
+    }
+    String handler = prop.getProperty("logging.Handler");
+    if ("true".equalsIgnoreCase(prop.getProperty("logging.Async"))) {
+      int capacity = Integer.parseInt(prop.getProperty("logging.Capacity", "1024"));
+      if ("ConsoleHandler".equals(handler)) {
+        logHandler = new AsyncHandler(new ConsoleHandler(), capacity);
+      } else if ("FileHandler".equals(handler)) {
+        logHandler = new AsyncHandler(capacity) {
+          protected Handler open() throws IOException {
+            return new FileHandler(System.getProperty("user.home")+"/prettyxml.log");
+          }
+        };
+      }
+    } else if ("ConsoleHandler".equals(handler)) {
+      logHandler = new ConsoleHandler();
+    } else if ("FileHandler".equals(handler)) {
+      logHandler = new FileHandler(System.getProperty("user.home")+"/prettyxml.log");
+    }
+    if (logHandler != null) {
+      logHandler.setLevel(level);
+      l.addHandler(logHandler);
+    }
+  }
+  
   static void setIndentation(String no, Format format) {
     int n = Integer.parseInt(no);
     if (n > 0) {
@@ -201,6 +296,7 @@ public class PrettyPrint implements PropertyNames {
     if ((p = prop.getProperty(ENCODING)) != null) {
       format.setEncoding(p);
     }
+    format.setEscapeStrategy(EncodingWriter.getEscapeStrategy(format.getEncoding()));
     if ((p = prop.getProperty(EXPAND_EMPTY_ELEMENTS)) != null) {
       format.setExpandEmptyElements(Boolean.valueOf(p).booleanValue());
     }
@@ -254,6 +350,7 @@ public class PrettyPrint implements PropertyNames {
     checkBoolean(OMIT_ENCODING, prop);
     checkBoolean(INDENT_ATTRIBUTES, prop);
     checkBoolean(SORT_ATTRIBUTES, prop);
+    checkBoolean(LOAD_EXTERNAL_DTD, prop);
     if (prop.containsKey(INDENT)) {
       try {
         int i = Integer.parseInt(prop.getProperty(INDENT));
@@ -280,10 +377,14 @@ public class PrettyPrint implements PropertyNames {
       }
     }
     checkString(TRANSFORM, prop);
+    for (int i=0; i<LIMIT_KEYS.length; i++) {
+      Limits.check(LIMIT_KEYS[i], prop);
+    }
     if (extended) {
       checkString(INPUT, prop);
       checkString(URL, prop);
       checkString(OUTPUT, prop);
+      checkBoolean(STREAM, prop);
       if (prop.containsKey(INPUT) && prop.containsKey(URL)) {
         throw new Exception("do not use "+INPUT+" and "+URL+" at the same time");
       }
@@ -291,6 +392,7 @@ public class PrettyPrint implements PropertyNames {
       prop.remove(INPUT);
       prop.remove(URL);
       prop.remove(OUTPUT);
+      prop.remove(STREAM);
     }
   }
   
@@ -397,8 +499,8 @@ public class PrettyPrint implements PropertyNames {
    * @throws Exception if stylesheet not found
    */
   public static XSLTransformer mkTransformer(String name) throws Exception {
-    if (transformation.containsKey(name)) {
-      return (XSLTransformer)transformation.get(name);
+    if (transformationNames.contains(name)) {
+      return getTransformation(name);
     }
     File file = new File(name);
     if (file.isFile()) {
@@ -407,6 +509,57 @@ public class PrettyPrint implements PropertyNames {
     return mkTransformerResource(name);
   }
   
+  /**
+   * Get the cache of compiled stylesheet files used by execute.
+   */
+  public static TemplatesCache getTemplatesCache() {
+    return templatesCache;
+  }
+  
+  /**
+   * Get compiled stylesheet of wellknown transformation, file or resource -
+   * stylesheets are compiled once and cached.
+   *
+   * @throws Exception if stylesheet not found or in error
+   */
+  static Templates mkTemplates(String name) throws Exception {
+    boolean wellknown = transformationNames.contains(name);
+    File file = new File(name);
+    if (!wellknown && file.isFile()) {
+      return templatesCache.get(file);
+    }
+    URL url = PrettyPrint.class.getResource("/"+(wellknown ? name+".xslt" : name));
+    if (url == null) {
+      throw new Exception("cannot find stylesheet "+name);
+    }
+    return templatesCache.get(url);
+  }
+  
+  /**
+   * Chain stylesheets so the output events of one flow directly
+   * into the next and the last into the result.
+   *
+   * @return the handler receiving the input events
+   */
+  static TransformerHandler mkPipeline(List templates, Result result) throws Exception {
+    SAXTransformerFactory factory = (SAXTransformerFactory)TransformerFactory.newInstance();
+    TransformerHandler first = null;
+    TransformerHandler previous = null;
+    for (int i=0; i<templates.size(); i++) {
+      TransformerHandler handler = factory.newTransformerHandler((Templates)templates.get(i));
+      if (previous == null) {
+        first = handler;
+      } else {
+        SAXResult sr = new SAXResult(handler);
+        sr.setLexicalHandler(handler);
+        previous.setResult(sr);
+      }
+      previous = handler;
+    }
+    previous.setResult(result);
+    return first;
+  }
+  
   private static XSLTransformer mkTransformerResource(String name) throws Exception {
     InputStream is = null;
     try {
@@ -421,67 +574,277 @@ public class PrettyPrint implements PropertyNames {
   }
   
   /**
-   * Do the prettyprint according to properties.
+   * Do the prettyprint according to properties - the properties
+   * are not changed.
    *
    * @throws Exception if something goes wrong
    */
   public static void execute(Properties prop) throws Exception {
-    execute(prop, null);
+    execute(prop, (Job)null);
+  }
+  
+  /**
+   * Do the prettyprint according to properties as a job - the properties
+   * are not changed.
+   *
+   * @param job followed and checked while printing, null for none
+   * @throws InterruptedIOException if the job is cancelled or past its deadline
+   * @throws Exception if something goes wrong
+   */
+  public static void execute(Properties prop, Job job) throws Exception {
+    execute((Properties)prop.clone(), null, null, job);
   }
   
   /**
-   * Do the prettyprint according to properties.
+   * Do the prettyprint according to properties - the properties
+   * are not changed.
    *
    * @param input holds xml document as text if present
    * @return prettyprinted document as text if input param present
    * @throws Exception if something goes wrong
    */
   public static String execute(Properties prop, String input) throws Exception {
+    return execute(prop, input, (Job)null);
+  }
+  
+  /**
+   * Do the prettyprint according to properties as a job - the properties
+   * are not changed.
+   *
+   * @param input holds xml document as text if present
+   * @param job followed and checked while printing, null for none
+   * @return prettyprinted document as text if input param present
+   * @throws InterruptedIOException if the job is cancelled or past its deadline
+   * @throws Exception if something goes wrong
+   */
+  public static String execute(Properties prop, String input, Job job) throws Exception {
+    prop = (Properties)prop.clone();
+    if (input == null) {
+      execute(prop, null, null, job);
+      return null;
+    }
+    InputSource source = new InputSource(new StringReader(input));
+    if (prop.containsKey(OUTPUT)) {
+      execute(prop, source, null, job);
+      return null;
+    }
+    // room for the indentation added to most documents
+    StringWriter out = new StringWriter(input.length() + input.length() / 2 + 64);
+    execute(prop, source, ChannelOutput.writer(out), job);
+    return out.toString();
+  }
+  
+  /**
+   * Do the prettyprint of a document read from a stream according to
+   * properties - INPUT, URL and OUTPUT are not used.
+   * The output stream is flushed but not closed.
+   *
+   * @throws Exception if something goes wrong
+   */
+  public static void execute(Properties prop, InputStream in, OutputStream out) throws Exception {
+    execute((Properties)prop.clone(), new InputSource(in), ChannelOutput.stream(out), null);
+  }
+  
+  /**
+   * Do the prettyprint of a document read as text to a writer according
+   * to properties - INPUT, URL and OUTPUT are not used.
+   * The declaration still names the encoding of the properties.
+   * The writer is flushed but not closed.
+   *
+   * @throws Exception if something goes wrong
+   */
+  public static void execute(Properties prop, Reader in, Writer out) throws Exception {
+    execute((Properties)prop.clone(), new InputSource(in), ChannelOutput.writer(out), null);
+  }
+  
+  /**
+   * Do the prettyprint of a document held as text to a writer according
+   * to properties - the text is read in place without being copied.
+   *
+   * @see #execute(Properties, Reader, Writer)
+   * @throws Exception if something goes wrong
+   */
+  public static void execute(Properties prop, CharSequence input, Writer out) throws Exception {
+    Reader in = input instanceof String
+        ? (Reader)new StringReader((String)input) : new CharSequenceReader(input);
+    execute(prop, in, out);
+  }
+  
+  /**
+   * Do the prettyprint - the properties are checked in place.
+   *
+   * @param source of document, null for INPUT, URL or standard input
+   * @param out for output, null for OUTPUT or standard output
+   * @param job followed and checked while printing, null for none
+   */
+  private static void execute(Properties prop, InputSource source, ChannelOutput out, Job job) throws Exception {
+    PrettyPrinter printer;
     try {
       checkProperties(prop, true);
-      logger.log(Level.FINEST, "input="+input+" properties="+prop);
-      Format format = initFormat(prop);
-      PrettyXMLOutputter outp = new PrettyXMLOutputter(format);
-      outp.setSortAttributes(prop.containsKey(SORT_ATTRIBUTES));
-      outp.setIndentAttributes(prop.containsKey(INDENT_ATTRIBUTES));
-      SAXBuilder builder = new SAXBuilder();
-      Document doc;
-      if (input != null) {
-        doc = builder.build(new StringReader(input));
-      } else if (prop.containsKey(INPUT)) {
-        doc = builder.build(new File(prop.getProperty(INPUT)));
-      } else if (prop.containsKey(URL)) {
-        doc = builder.build(new URL(prop.getProperty(URL)));
-      } else {
-        doc = builder.build(System.in);
+      if (logger.isLoggable(Level.FINEST)) {
+        logger.log(Level.FINEST, "properties="+prop);
       }
-      if (prop.containsKey(TRANSFORM)) {
-        String[] sa = prop.getProperty(TRANSFORM).split(";");
-        for (int i=0; i<sa.length; i++) {
-          XSLTransformer transformer = mkTransformer(sa[i].trim());
-          doc = transformer.transform(doc);
+      printer = new PrettyPrinter(prop, entityResolver);
+    } catch (Exception e) {
+      throw failed(prop, e, job);
+    }
+    execute(printer, prop, source, out, job);
+  }
+  
+  /**
+   * Do the prettyprint with a printer set up from properties.
+   *
+   * @param prop gives INPUT, URL and OUTPUT when no source or out
+   */
+  static void execute(PrettyPrinter printer, Properties prop, InputSource source, ChannelOutput out, Job job) throws Exception {
+    try {
+      String encoding = printer.getFormat().getEncoding();
+      InputStream mapped = null;
+      if (source == null) {
+        source = mkSource(prop);
+        if ((job != null || printer.limitsInput()) && source.getByteStream() == null) {
+          // opened here to count the bytes read
+          source.setByteStream(new java.net.URL(source.getSystemId()).openStream());
         }
+        mapped = source.getByteStream();
       }
-      if (prop.containsKey(OUTPUT)) {
-        FileOutputStream fos = null;
-        try {
-          fos = new FileOutputStream(new File(prop.getProperty(OUTPUT)));
-          outp.output(doc, fos);
-        } finally {
-          IOUtils.closeQuietly(fos);
+      source = printer.limit(source);
+      if (job != null) {
+        job.start();
+        source = job.wrap(source);
+      }
+      try {
+        if (printer.isStream()) {
+          ChannelOutput output = openOutput(prop, out);
+          try {
+            printer.stream(source, output.getWriter(encoding, outputBufferSize), job);
+            output.close();
+          } finally {
+            output.abort();
+          }
+        } else {
+          Document doc = printer.transform(printer.build(source, job), job);
+          ChannelOutput output = openOutput(prop, out);
+          try {
+            printer.output(doc, output.getWriter(encoding, outputBufferSize), job);
+            output.close();
+          } finally {
+            output.abort();
+          }
+        }
+        if (job != null) {
+          job.done();
+        }
+      } finally {
+        if (mapped != System.in) {
+          IOUtils.closeQuietly(mapped);
         }
-      } else if (input != null) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        outp.output(doc, baos);
-        return baos.toString(prop.getProperty(ENCODING, "UTF-8"));
-      } else {
-        outp.output(doc, System.out);
       }
-      return null;
     } catch (Exception e) {
+      throw failed(prop, e, job);
+    }
+  }
+  
+  private static Exception failed(Properties prop, Exception e, Job job) {
+    if (logger.isLoggable(Level.FINER)) {
       logger.log(Level.FINER, "properties="+prop, e);
-      throw e;
     }
+    return job == null ? e : job.stopped(e);
+  }
+  
+  /**
+   * Get source of the document given by INPUT, URL or else standard input -
+   * an INPUT file may be read as a memory mapped stream.
+   */
+  private static InputSource mkSource(Properties prop) throws IOException {
+    if (prop.containsKey(INPUT)) {
+      File file = new File(prop.getProperty(INPUT));
+      InputSource source = new InputSource(file.toURI().toString());
+      source.setByteStream(openMapped(file));
+      return source;
+    } else if (prop.containsKey(URL)) {
+      return new InputSource(prop.getProperty(URL));
+    }
+    return new InputSource(System.in);
+  }
+  
+  /**
+   * Get the given output or else open the output file given by OUTPUT -
+   * preallocated to the size of the INPUT file if enabled - or else
+   * standard output.
+   */
+  private static ChannelOutput openOutput(Properties prop, ChannelOutput out) throws IOException {
+    if (out != null) {
+      return out;
+    } else if (!prop.containsKey(OUTPUT)) {
+      return ChannelOutput.stdout();
+    }
+    long size = 0;
+    if (preallocateOutput && prop.containsKey(INPUT)) {
+      size = new File(prop.getProperty(INPUT)).length();
+    }
+    return ChannelOutput.open(new File(prop.getProperty(OUTPUT)), size);
+  }
+  
+  /**
+   * Open input file as a memory mapped stream if its size is at least
+   * the mapped input threshold.
+   *
+   * @return null if the file shall be read by the parser
+   */
+  private static InputStream openMapped(File file) throws IOException {
+    if (file.length() < mappedInputThreshold || !file.isFile()) {
+      return null;
+    }
+    return new MappedInputStream(file);
+  }
+  
+  /**
+   * Set size in bytes from which input files are read through memory
+   * mapped regions instead of the buffered reads of the parser - default 32 MB.
+   */
+  public static void setMappedInputThreshold(long size) {
+    mappedInputThreshold = size;
+  }
+  
+  public static long getMappedInputThreshold() {
+    return mappedInputThreshold;
+  }
+  
+  /**
+   * Set size in bytes of the buffer used when writing output files
+   * and standard output - default 256 KB.
+   */
+  public static void setOutputBufferSize(int size) {
+    outputBufferSize = size;
+  }
+  
+  public static int getOutputBufferSize() {
+    return outputBufferSize;
+  }
+  
+  /**
+   * Controls preallocation of output files to the size of the input file,
+   * default is no preallocation.
+   */
+  public static void setPreallocateOutput(boolean preallocate) {
+    preallocateOutput = preallocate;
+  }
+  
+  public static boolean getPreallocateOutput() {
+    return preallocateOutput;
+  }
+  
+  /**
+   * Set resolver of DTDs and external entities used when parsing, e.g.,
+   * an {@link EntityCache} - default none, i.e., they are fetched by the parser.
+   */
+  public static void setEntityResolver(EntityResolver resolver) {
+    entityResolver = resolver;
+  }
+  
+  public static EntityResolver getEntityResolver() {
+    return entityResolver;
   }
   
 }
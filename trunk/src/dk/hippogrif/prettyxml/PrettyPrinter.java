@@ -0,0 +1,464 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+
+import org.jdom.Document;
+import org.jdom.output.Format;
+import org.jdom.transform.JDOMResult;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Prettyprints documents according to a set of properties checked and
+ * compiled once - the format, options and transform pipeline with its
+ * stylesheets - so it can be reused for many documents.
+ * A printer is immutable and may be used by many threads at the same time.<p>
+ * Made by a {@link PrettyPrinter.Builder}, e.g.,
+ * <pre>
+ *   PrettyPrinter printer = new PrettyPrinter.Builder()
+ *       .setSetting("pretty").setProperty(INDENT, "4").build();
+ *   printer.format(in, out);
+ * </pre>
+ * The properties INPUT, URL and OUTPUT are not used.
+ */
+public final class PrettyPrinter implements PropertyNames {
+
+  // final so a printer published without synchronization is seen built
+  private final Properties prop;
+  private final PrettyXMLOutputter outputter;
+  private final boolean stream;
+  private final EntityResolver resolver;
+  private final ParserPool parsers;
+  private final Limits limits;
+  // unmodifiable steps of ElementSorter or lists of chained Templates,
+  // when streaming a single list with all stylesheets
+  private final List pipeline;
+
+  /**
+   * Builds printers from a setting or properties and single properties
+   * overriding them.
+   */
+  public static class Builder {
+    private Properties prop = new Properties();
+    private EntityResolver resolver = PrettyPrint.getEntityResolver();
+
+    /**
+     * Start from a wellknown setting.
+     *
+     * @throws Exception if the setting is not wellknown
+     */
+    public Builder setSetting(String name) throws Exception {
+      Properties p = PrettyPrint.getSetting(name);
+      if (p == null) {
+        throw new Exception("unknown setting "+name);
+      }
+      prop = (Properties)p.clone();
+      return this;
+    }
+
+    /**
+     * Start from properties.
+     */
+    public Builder setProperties(Properties p) {
+      prop = (Properties)p.clone();
+      return this;
+    }
+
+    /**
+     * Set a property.
+     */
+    public Builder setProperty(String key, String value) {
+      prop.setProperty(key, value);
+      return this;
+    }
+
+    /**
+     * Set resolver of DTDs and external entities - default the one
+     * set on PrettyPrint when the builder was made.
+     */
+    public Builder setEntityResolver(EntityResolver resolver) {
+      this.resolver = resolver;
+      return this;
+    }
+
+    /**
+     * Check the properties and compile the stylesheets.
+     *
+     * @throws Exception if property error or stylesheet not found or in error
+     */
+    public PrettyPrinter build() throws Exception {
+      return new PrettyPrinter(prop, resolver);
+    }
+  }
+
+  /**
+   * @throws Exception if property error or stylesheet not found or in error
+   */
+  PrettyPrinter(Properties properties, EntityResolver resolver) throws Exception {
+    this.resolver = resolver;
+    prop = (Properties)properties.clone();
+    prop.remove(INPUT);
+    prop.remove(URL);
+    prop.remove(OUTPUT);
+    PrettyPrint.checkProperties(prop, true);
+    outputter = new PrettyXMLOutputter(PrettyPrint.initFormat(prop));
+    outputter.setSortAttributes(prop.containsKey(SORT_ATTRIBUTES));
+    outputter.setIndentAttributes(prop.containsKey(INDENT_ATTRIBUTES));
+    stream = "true".equals(prop.getProperty(STREAM));
+    parsers = ParserPool.get(!"false".equals(prop.getProperty(LOAD_EXTERNAL_DTD)));
+    limits = Limits.get(prop);
+    ArrayList steps = new ArrayList();
+    ArrayList templates = new ArrayList();
+    if (prop.containsKey(TRANSFORM)) {
+      String[] sa = prop.getProperty(TRANSFORM).split(";");
+      for (int i=0; i<sa.length; i++) {
+        String name = sa[i].trim();
+        ElementSorter sorter = PrettyPrint.getSorter(name);
+        if (sorter != null && !stream) {
+          if (!templates.isEmpty()) {
+            steps.add(Collections.unmodifiableList(templates));
+            templates = new ArrayList();
+          }
+          steps.add(sorter);
+        } else {
+          templates.add(PrettyPrint.mkTemplates(name));
+        }
+      }
+    }
+    if (!templates.isEmpty()) {
+      steps.add(Collections.unmodifiableList(templates));
+    }
+    pipeline = Collections.unmodifiableList(steps);
+  }
+
+  /**
+   * Get the checked properties.
+   */
+  public Properties getProperties() {
+    return (Properties)prop.clone();
+  }
+
+  /**
+   * Get the format of the output.
+   */
+  public Format getFormat() {
+    return outputter.getFormat();
+  }
+
+  /**
+   * Get resolver of DTDs and external entities, null if none.
+   */
+  public EntityResolver getEntityResolver() {
+    return resolver;
+  }
+
+  /**
+   * Get whether documents are prettyprinted while parsing.
+   */
+  public boolean isStream() {
+    return stream;
+  }
+
+  /**
+   * Prettyprint a document read from a stream to a stream
+   * in the encoding of the format.
+   * The output stream is flushed but not closed.
+   *
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(InputStream in, OutputStream out) throws Exception {
+    format(in, out, null);
+  }
+
+  /**
+   * Prettyprint a document read from a stream to a stream as a job.
+   *
+   * @param job followed and checked while printing, null for none
+   * @throws InterruptedIOException if the job is cancelled or past its deadline
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(InputStream in, OutputStream out, Job job) throws Exception {
+    Writer writer = EncodingWriter.makeWriter(out, outputter.getFormat().getEncoding());
+    print(new InputSource(in), writer, job);
+    writer.flush();
+  }
+
+  /**
+   * Prettyprint a document read as text to a writer - the declaration
+   * still names the encoding of the format.
+   * The writer is flushed but not closed.
+   *
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(Reader in, Writer out) throws Exception {
+    format(in, out, null);
+  }
+
+  /**
+   * Prettyprint a document read as text to a writer as a job.
+   *
+   * @param job followed and checked while printing, null for none
+   * @throws InterruptedIOException if the job is cancelled or past its deadline
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(Reader in, Writer out, Job job) throws Exception {
+    print(new InputSource(in), out, job);
+    out.flush();
+  }
+
+  /**
+   * Prettyprint a file to a file as {@link PrettyPrint#execute(Properties)}
+   * does with INPUT and OUTPUT - a large input is memory mapped and the
+   * output preallocated as enabled there.
+   *
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(File in, File out) throws Exception {
+    format(in, out, null);
+  }
+
+  /**
+   * Prettyprint a file to a file as a job.
+   *
+   * @param job followed and checked while printing, null for none
+   * @throws InterruptedIOException if the job is cancelled or past its deadline
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(File in, File out, Job job) throws Exception {
+    Properties files = new Properties();
+    files.setProperty(INPUT, in.getPath());
+    files.setProperty(OUTPUT, out.getPath());
+    PrettyPrint.execute(this, files, null, null, job);
+  }
+
+  /**
+   * Prettyprint a document from any source - a stream source or a SAX
+   * source without a reader is parsed, others are copied by an identity
+   * transformation - to a stream result given by writer, stream or
+   * file system id.
+   *
+   * @throws IllegalArgumentException if the result is not a StreamResult
+   * @throws Exception if parse, transform or io error
+   */
+  public void format(Source source, Result result) throws Exception {
+    if (!(result instanceof StreamResult)) {
+      throw new IllegalArgumentException("result must be a StreamResult");
+    }
+    StreamResult sr = (StreamResult)result;
+    OutputStream file = null;
+    try {
+      Writer writer = sr.getWriter();
+      if (writer == null) {
+        OutputStream out = sr.getOutputStream();
+        if (out == null) {
+          if (sr.getSystemId() == null) {
+            throw new IllegalArgumentException("empty StreamResult");
+          }
+          file = new FileOutputStream(new File(new URI(sr.getSystemId())));
+          out = file;
+        }
+        writer = EncodingWriter.makeWriter(out, outputter.getFormat().getEncoding());
+      }
+      InputSource input = null;
+      if (!(source instanceof SAXSource) || ((SAXSource)source).getXMLReader() == null) {
+        input = SAXSource.sourceToInputSource(source);
+      }
+      if (input != null) {
+        print(input, writer, null);
+      } else if (stream) {
+        stream(source, writer);
+      } else {
+        output(transform(build(source), null), writer, null);
+      }
+      writer.flush();
+    } finally {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+
+  /**
+   * Get whether the input must be read as a stream to be limited.
+   */
+  boolean limitsInput() {
+    return limits != null && limits.limitsInput();
+  }
+
+  /**
+   * Get source limited to the max input bytes if any.
+   */
+  InputSource limit(InputSource input) {
+    return limits == null ? input : limits.wrap(input);
+  }
+
+  void print(InputSource input, Writer out, Job job) throws Exception {
+    input = limit(input);
+    if (job != null) {
+      job.start();
+      input = job.wrap(input);
+    }
+    try {
+      if (stream) {
+        stream(input, out, job);
+      } else {
+        output(transform(build(input, job), job), out, job);
+      }
+    } catch (Exception e) {
+      throw job == null ? e : job.stopped(e);
+    }
+    if (job != null) {
+      job.done();
+    }
+  }
+
+  Document build(InputSource input, Job job) throws Exception {
+    if (job != null) {
+      job.setStage(Job.PARSE);
+    }
+    return parsers.build(input, resolver, limits);
+  }
+
+  private Document build(Source source) throws Exception {
+    JDOMResult result = new JDOMResult();
+    TransformerFactory.newInstance().newTransformer().transform(source,
+        checked(result.getHandler(), result.getLexicalHandler(), null));
+    return result.getDocument();
+  }
+
+  /**
+   * Transform document through the pipeline - the built-in sorts are
+   * done natively on the document and the stylesheets between them are
+   * chained without building intermediate documents.
+   */
+  Document transform(Document doc, Job job) throws Exception {
+    if (job != null && !pipeline.isEmpty()) {
+      job.setStage(Job.TRANSFORM);
+    }
+    for (int i=0; i<pipeline.size(); i++) {
+      Object step = pipeline.get(i);
+      if (job != null) {
+        job.check();
+      }
+      if (step instanceof ElementSorter) {
+        ((ElementSorter)step).sort(doc);
+      } else {
+        JDOMResult result = new JDOMResult();
+        TransformerHandler handler = PrettyPrint.mkPipeline((List)step,
+            checked(result.getHandler(), result.getLexicalHandler(), job));
+        // the doctype is not part of the stylesheet output
+        DocumentWalker.walk(doc, handler, handler);
+        doc = result.getDocument();
+      }
+    }
+    return doc;
+  }
+
+  void output(Document doc, Writer out, Job job) throws Exception {
+    if (job == null) {
+      outputter.output(doc, out);
+    } else {
+      job.setStage(Job.OUTPUT);
+      outputter.output(doc, out, job);
+    }
+  }
+
+  /**
+   * Prettyprint while parsing without building a document -
+   * the stylesheets are chained and run while parsing.
+   */
+  void stream(InputSource input, Writer out, Job job) throws Exception {
+    if (job != null) {
+      job.setStage(Job.STREAM);
+    }
+    PrettyXMLHandler handler = new PrettyXMLHandler(outputter, out);
+    handler.setJob(job);
+    XMLReader reader = parsers.getReader(resolver, limits);
+    handler.setHandlers(reader);
+    ContentHandler content = handler;
+    LexicalHandler lexical = handler;
+    if (!pipeline.isEmpty()) {
+      // the handler checks the job itself
+      TransformerHandler first = PrettyPrint.mkPipeline((List)pipeline.get(0), checked(handler, handler, null));
+      reader.setDTDHandler(first);
+      content = first;
+      lexical = first;
+    }
+    if (limits != null) {
+      HandlerFilter filter = limits.filter(content, lexical);
+      content = filter;
+      lexical = filter;
+    }
+    if (content != handler) {
+      reader.setContentHandler(content);
+      reader.setProperty("http://xml.org/sax/properties/lexical-handler", lexical);
+    }
+    reader.parse(input);
+    // only given back when the document was parsed
+    parsers.release(reader);
+  }
+
+  private void stream(Source source, Writer out) throws Exception {
+    PrettyXMLHandler handler = new PrettyXMLHandler(outputter, out);
+    SAXResult result = checked(handler, handler, null);
+    if (!pipeline.isEmpty()) {
+      TransformerHandler first = PrettyPrint.mkPipeline((List)pipeline.get(0), result);
+      result = new SAXResult(first);
+      result.setLexicalHandler(first);
+    }
+    TransformerFactory.newInstance().newTransformer().transform(source, result);
+  }
+
+  /**
+   * Get result passing events to the handlers checked by the limits
+   * and the job if any.
+   */
+  private SAXResult checked(ContentHandler content, LexicalHandler lexical, Job job) {
+    if (limits != null) {
+      HandlerFilter filter = limits.filter(content, lexical);
+      content = filter;
+      lexical = filter;
+    }
+    if (job != null) {
+      HandlerFilter filter = new JobHandler(job, content, lexical);
+      content = filter;
+      lexical = filter;
+    }
+    SAXResult result = new SAXResult(content);
+    result.setLexicalHandler(lexical);
+    return result;
+  }
+
+}
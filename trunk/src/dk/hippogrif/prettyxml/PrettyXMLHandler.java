@@ -0,0 +1,706 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jdom.Namespace;
+import org.jdom.output.*;
+import org.xml.sax.*;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler prettyprinting the parse events directly to a writer -
+ * the output is the same as {@link PrettyXMLOutputter} produces from the
+ * JDOM document which SAXBuilder would have built, but no document is built.<p>
+ * Only the open elements and the text following the last markup of each
+ * of them are kept, so memory use is bounded by the nesting depth
+ * and not by the size of the document.<p>
+ * A handler prettyprints one document and is not threadsafe.
+ */
+public class PrettyXMLHandler extends DefaultHandler implements LexicalHandler {
+
+  private static final String TEXT = "text";
+  private static final String CDATA = "cdata";
+  private static final String ENTITY_REF = "entityRef";
+
+  private Writer out;
+  private Format userFormat;
+  private Format preserveFormat = Format.getRawFormat();
+  private boolean sortAttributes;
+  private boolean indentAttributes;
+  private AttributeOrder[] orders;
+  // indexes of the attributes printed, reused for each element
+  private int[] indexes = new int[8];
+
+  private Format currentFormat;
+  private boolean escapeOutput = true;
+  private ArrayList elements = new ArrayList();
+  private ArrayList declaredNamespaces = new ArrayList();
+  private ArrayList namespacePrefixes = new ArrayList();
+  private ArrayList namespaceURIs = new ArrayList();
+  private StringBuffer textBuffer = new StringBuffer();
+  private boolean inCDATA;
+  private boolean previousCDATA;
+  private boolean inDTD;
+  private boolean hasContent;
+  private String docTypeName, docTypePublicID, docTypeSystemID;
+  private Job job;
+
+  /**
+   * An element which has been started but not yet ended.
+   */
+  private static class OpenElement {
+    String qName;
+    int level;
+    int attributeCount;
+    int namespaceMark;
+    Format previousFormat;
+    // true when the start tag has been closed,
+    // i.e., non text content has been seen
+    boolean mixed;
+    // true when content has been printed
+    boolean printed;
+    // pending text nodes as pairs of kind and text
+    ArrayList texts = new ArrayList();
+  }
+
+  /**
+   * Creates a handler writing to the given writer
+   * with the format and options of the outputter.
+   *
+   * @param outputter holds format and options
+   * @param out the writer to print to
+   */
+  public PrettyXMLHandler(PrettyXMLOutputter outputter, Writer out) {
+    this.out = out;
+    userFormat = outputter.getFormat();
+    sortAttributes = outputter.getSortAttributes();
+    indentAttributes = outputter.getIndentAttributes();
+    orders = outputter.getAttributeOrders();
+    currentFormat = userFormat;
+  }
+
+  /**
+   * Creates a handler writing to the given stream in the encoding
+   * of the outputter format.
+   *
+   * @param outputter holds format and options
+   * @param out the stream to print to
+   * @throws UnsupportedEncodingException if the format encoding is unknown
+   */
+  public PrettyXMLHandler(PrettyXMLOutputter outputter, OutputStream out)
+      throws UnsupportedEncodingException {
+    this(outputter, EncodingWriter.makeWriter(out, outputter.getFormat().getEncoding()));
+  }
+
+  /**
+   * Make a namespace aware XMLReader configured as JDOM's SAXBuilder
+   * would configure it and reporting to this handler.
+   *
+   * @throws Exception if no parser available
+   */
+  public XMLReader mkXMLReader() throws Exception {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setValidating(false);
+    factory.setNamespaceAware(true);
+    XMLReader reader = factory.newSAXParser().getXMLReader();
+    setHandlers(reader);
+    return reader;
+  }
+
+  /**
+   * Set job checked and told of the elements written, null for none.
+   */
+  void setJob(Job job) {
+    this.job = job;
+  }
+
+  /**
+   * Make an XMLReader report to this handler.
+   */
+  void setHandlers(XMLReader reader) {
+    reader.setContentHandler(this);
+    reader.setDTDHandler(this);
+    reader.setErrorHandler(this);
+    try {
+      reader.setProperty("http://xml.org/sax/properties/lexical-handler", this);
+    } catch (SAXException e) {
+      // no comments, CDATA or DOCTYPE
+    }
+  }
+
+  /**
+   * Parse and prettyprint a document.
+   *
+   * @param input the document source
+   * @throws Exception if parse or io error
+   */
+  public void parse(InputSource input) throws Exception {
+    mkXMLReader().parse(input);
+  }
+
+  // ErrorHandler
+
+  public void error(SAXParseException e) throws SAXException {
+    throw e;
+  }
+
+  // ContentHandler
+
+  public void startDocument() throws SAXException {
+    try {
+      if (!userFormat.getOmitDeclaration()) {
+        out.write("<?xml version=\"1.0\"");
+        if (!userFormat.getOmitEncoding()) {
+          out.write(" encoding=\"" + userFormat.getEncoding() + "\"");
+        }
+        out.write("?>");
+        out.write(userFormat.getLineSeparator());
+      }
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void endDocument() throws SAXException {
+    try {
+      if (hasContent && userFormat.getIndent() == null) {
+        out.write(userFormat.getLineSeparator());
+      }
+      out.flush();
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void startPrefixMapping(String prefix, String uri) {
+    declaredNamespaces.add(new String[]{prefix, uri});
+  }
+
+  public void startElement(String uri, String localName, String qName, Attributes atts)
+      throws SAXException {
+    flushCharacters();
+    try {
+      if (job != null) {
+        job.elementWritten();
+      }
+      int level = 0;
+      if (!elements.isEmpty()) {
+        OpenElement parent = (OpenElement)elements.get(elements.size()-1);
+        startContent(parent);
+        level = parent.level + 1;
+      }
+      OpenElement element = new OpenElement();
+      element.qName = qName;
+      element.level = level;
+      element.previousFormat = currentFormat;
+      element.namespaceMark = namespacePrefixes.size();
+      String space = atts.getValue(Namespace.XML_NAMESPACE.getURI(), "space");
+      if ("default".equals(space)) {
+        currentFormat = userFormat;
+      } else if ("preserve".equals(space)) {
+        currentFormat = preserveFormat;
+      }
+      elements.add(element);
+
+      out.write("<");
+      out.write(qName);
+
+      // element namespace
+      String prefix = prefix(qName);
+      if (!"xml".equals(prefix) && !("".equals(uri) && getURI("") == null)) {
+        printNamespace(prefix, uri);
+      }
+
+      // additional namespaces
+      for (int i=0; i<declaredNamespaces.size(); i++) {
+        String[] ns = (String[])declaredNamespaces.get(i);
+        if (!(ns[0].equals(prefix) && ns[1].equals(uri))) {
+          printNamespace(ns[0], ns[1]);
+        }
+      }
+      declaredNamespaces.clear();
+
+      printAttributes(element, atts);
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void endElement(String uri, String localName, String qName)
+      throws SAXException {
+    flushCharacters();
+    try {
+      OpenElement element = (OpenElement)elements.remove(elements.size()-1);
+      int start = skipLeadingWhite(element.texts, 0);
+      if (!element.mixed && start >= element.texts.size()) {
+        // empty or all insignificant whitespace
+        closeStartTag(element, true);
+        if (currentFormat.getExpandEmptyElements()) {
+          out.write("></");
+          out.write(element.qName);
+          out.write(">");
+        } else {
+          out.write(" />");
+        }
+      } else {
+        if (element.mixed) {
+          printTexts(element);
+          newline();
+          indent(element.level);
+        } else {
+          // text only - no indentation
+          closeStartTag(element, false);
+          out.write(">");
+          printTextRange(element.texts, start, element.texts.size());
+        }
+        out.write("</");
+        out.write(element.qName);
+        out.write(">");
+      }
+      while (namespacePrefixes.size() > element.namespaceMark) {
+        namespacePrefixes.remove(namespacePrefixes.size()-1);
+        namespaceURIs.remove(namespaceURIs.size()-1);
+      }
+      currentFormat = element.previousFormat;
+      if (elements.isEmpty()) {
+        endDocumentContent();
+      }
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    if (length == 0) {
+      return;
+    }
+    if (previousCDATA != inCDATA) {
+      flushCharacters();
+    }
+    textBuffer.append(ch, start, length);
+  }
+
+  public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+    characters(ch, start, length);
+  }
+
+  public void processingInstruction(String target, String data) throws SAXException {
+    flushCharacters();
+    try {
+      startNode();
+      boolean processed = false;
+      if (!currentFormat.getIgnoreTrAXEscapingPIs()) {
+        if (target.equals(javax.xml.transform.Result.PI_DISABLE_OUTPUT_ESCAPING)) {
+          escapeOutput = false;
+          processed = true;
+        } else if (target.equals(javax.xml.transform.Result.PI_ENABLE_OUTPUT_ESCAPING)) {
+          escapeOutput = true;
+          processed = true;
+        }
+      }
+      if (!processed) {
+        out.write("<?");
+        out.write(target);
+        if (!"".equals(data)) {
+          out.write(" ");
+          out.write(data);
+        }
+        out.write("?>");
+      }
+      endNode();
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void skippedEntity(String name) throws SAXException {
+    if (name.startsWith("%") || elements.isEmpty()) {
+      return;
+    }
+    flushCharacters();
+    OpenElement element = (OpenElement)elements.get(elements.size()-1);
+    element.texts.add(ENTITY_REF);
+    element.texts.add(name);
+  }
+
+  // LexicalHandler
+
+  public void startDTD(String name, String publicID, String systemID) throws SAXException {
+    flushCharacters();
+    docTypeName = name;
+    docTypePublicID = publicID;
+    docTypeSystemID = systemID;
+    inDTD = true;
+  }
+
+  public void endDTD() throws SAXException {
+    inDTD = false;
+    try {
+      out.write("<!DOCTYPE ");
+      out.write(docTypeName);
+      if (docTypePublicID != null) {
+        out.write(" PUBLIC \"");
+        out.write(docTypePublicID);
+        out.write("\"");
+      }
+      if (docTypeSystemID != null) {
+        if (docTypePublicID == null) {
+          out.write(" SYSTEM");
+        }
+        out.write(" \"");
+        out.write(docTypeSystemID);
+        out.write("\"");
+      }
+      out.write(">");
+      out.write(currentFormat.getLineSeparator());
+      endDocumentContent();
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  public void startEntity(String name) {
+  }
+
+  public void endEntity(String name) {
+  }
+
+  public void startCDATA() {
+    inCDATA = true;
+  }
+
+  public void endCDATA() {
+    previousCDATA = true;
+    inCDATA = false;
+  }
+
+  public void comment(char[] ch, int start, int length) throws SAXException {
+    flushCharacters();
+    if (inDTD || length == 0) {
+      return;
+    }
+    try {
+      startNode();
+      out.write("<!--");
+      out.write(ch, start, length);
+      out.write("-->");
+      endNode();
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  // printing
+
+  /**
+   * Collect buffered characters as a text node of the current element -
+   * adjacent characters are joined as by JDOM's SAXHandler.
+   */
+  private void flushCharacters() {
+    if (textBuffer.length() == 0) {
+      previousCDATA = inCDATA;
+      return;
+    }
+    if (!elements.isEmpty()) {
+      OpenElement element = (OpenElement)elements.get(elements.size()-1);
+      element.texts.add(previousCDATA ? CDATA : TEXT);
+      element.texts.add(textBuffer.toString());
+    }
+    textBuffer.setLength(0);
+    previousCDATA = inCDATA;
+  }
+
+  /**
+   * Prepare printing of a non text node in the current element or document.
+   */
+  private void startNode() throws IOException {
+    if (!elements.isEmpty()) {
+      startContent((OpenElement)elements.get(elements.size()-1));
+    }
+  }
+
+  /**
+   * Finish printing of a non text node.
+   */
+  private void endNode() throws IOException {
+    if (elements.isEmpty()) {
+      endDocumentContent();
+    }
+  }
+
+  private void endDocumentContent() throws IOException {
+    hasContent = true;
+    newline();
+  }
+
+  /**
+   * Prepare printing of a non text node as content of an element,
+   * closing its start tag and printing pending text first.
+   */
+  private void startContent(OpenElement element) throws IOException {
+    if (!element.mixed) {
+      element.mixed = true;
+      closeStartTag(element, false);
+      out.write(">");
+      newline();
+    }
+    printTexts(element);
+    if (element.printed) {
+      newline();
+    }
+    indent(element.level + 1);
+    element.printed = true;
+  }
+
+  /**
+   * Print pending text of an element with mixed content.
+   */
+  private void printTexts(OpenElement element) throws IOException {
+    ArrayList texts = element.texts;
+    if (texts.isEmpty()) {
+      return;
+    }
+    int first = skipLeadingWhite(texts, 0);
+    if (first < texts.size()) {
+      if (element.printed) {
+        newline();
+      }
+      indent(element.level + 1);
+      printTextRange(texts, first, texts.size());
+      element.printed = true;
+    }
+    texts.clear();
+  }
+
+  /**
+   * Print the end of the attributes in a start tag
+   * as done by {@link PrettyXMLOutputter} when attributes are indented.
+   */
+  private void closeStartTag(OpenElement element, boolean empty) throws IOException {
+    if (indentAttributes && element.attributeCount > 0 &&
+        currentFormat.getIndent() != null && !currentFormat.getIndent().equals("")) {
+      newline();
+      indentAttribute(element.level);
+      if (!empty && element.level > 0) {
+        out.write(" ");
+      }
+    }
+  }
+
+  private void printAttributes(OpenElement element, Attributes atts) throws IOException {
+    int size = 0;
+    for (int i=0; i<atts.getLength(); i++) {
+      String qName = atts.getQName(i);
+      if (qName.startsWith("xmlns:") || qName.equals("xmlns")) {
+        continue;
+      }
+      if (size == indexes.length) {
+        int[] grown = new int[size * 2];
+        System.arraycopy(indexes, 0, grown, 0, size);
+        indexes = grown;
+      }
+      indexes[size++] = i;
+    }
+    // sorted by qualified name as the outputter does
+    int[] permutation = sortAttributes && size > 1
+        ? AttributeOrder.get(orders, atts, indexes, size).permutation : null;
+    element.attributeCount = size;
+    boolean indent = indentAttributes && size > 0 &&
+        currentFormat.getIndent() != null && !currentFormat.getIndent().equals("");
+    for (int i=0; i<size; i++) {
+      int index = indexes[permutation == null ? i : permutation[i]];
+      if (indent) {
+        newline();
+        indentAttribute(element.level + 1);
+      }
+      String qName = atts.getQName(index);
+      String prefix = prefix(qName);
+      String uri = atts.getURI(index);
+      if (!"".equals(uri) && !"xml".equals(prefix)) {
+        printNamespace(prefix, uri);
+      }
+      out.write(" ");
+      out.write(qName);
+      out.write("=\"");
+      Escaper.writeAttribute(out, atts.getValue(index), currentFormat);
+      out.write("\"");
+    }
+  }
+
+  private void printNamespace(String prefix, String uri) throws IOException {
+    if (uri.equals(getURI(prefix))) {
+      return;
+    }
+    out.write(" xmlns");
+    if (!prefix.equals("")) {
+      out.write(":");
+      out.write(prefix);
+    }
+    out.write("=\"");
+    out.write(uri);
+    out.write("\"");
+    namespacePrefixes.add(prefix);
+    namespaceURIs.add(uri);
+  }
+
+  private String getURI(String prefix) {
+    for (int i=namespacePrefixes.size()-1; i>=0; i--) {
+      if (prefix.equals(namespacePrefixes.get(i))) {
+        return (String)namespaceURIs.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static String prefix(String qName) {
+    int i = qName.indexOf(':');
+    return i < 0 ? "" : qName.substring(0, i);
+  }
+
+  /**
+   * Print text nodes as XMLOutputter.printTextRange.
+   */
+  private void printTextRange(ArrayList texts, int start, int end) throws IOException {
+    String previous = null;
+    start = skipLeadingWhite(texts, start);
+    if (start < texts.size()) {
+      end = skipTrailingWhite(texts, end);
+      for (int i = start; i < end; i += 2) {
+        String kind = (String)texts.get(i);
+        String next = (String)texts.get(i+1);
+        if (kind == ENTITY_REF) {
+          next = "&" + next + ";";
+        }
+        if (next.length() == 0) {
+          continue;
+        }
+        if (previous != null) {
+          if (currentFormat.getTextMode() == Format.TextMode.NORMALIZE ||
+              currentFormat.getTextMode() == Format.TextMode.TRIM) {
+            if (endsWithWhite(previous) || startsWithWhite(next)) {
+              out.write(" ");
+            }
+          }
+        }
+        if (kind == CDATA) {
+          Escaper.writeCDATA(out, next, currentFormat);
+        } else if (kind == ENTITY_REF) {
+          out.write(next);
+        } else {
+          Escaper.writeText(out, next, currentFormat, escapeOutput);
+        }
+        previous = next;
+      }
+    }
+  }
+
+  private boolean trimming() {
+    return currentFormat.getTextMode() == Format.TextMode.TRIM_FULL_WHITE
+        || currentFormat.getTextMode() == Format.TextMode.NORMALIZE
+        || currentFormat.getTextMode() == Format.TextMode.TRIM;
+  }
+
+  // texts holds pairs of kind and text so indexes step by 2
+  private int skipLeadingWhite(ArrayList texts, int start) {
+    int index = start;
+    if (trimming()) {
+      while (index < texts.size()) {
+        if (!isAllWhitespace(texts, index)) {
+          return index;
+        }
+        index += 2;
+      }
+    }
+    return index;
+  }
+
+  private int skipTrailingWhite(ArrayList texts, int end) {
+    int index = end;
+    if (trimming()) {
+      while (index > 0) {
+        if (!isAllWhitespace(texts, index - 2)) {
+          break;
+        }
+        index -= 2;
+      }
+    }
+    return index;
+  }
+
+  private static boolean isAllWhitespace(ArrayList texts, int index) {
+    if (texts.get(index) == ENTITY_REF) {
+      return false;
+    }
+    String s = (String)texts.get(index+1);
+    for (int i = 0; i < s.length(); i++) {
+      if (!isWhitespace(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWithWhite(String s) {
+    return s.length() > 0 && isWhitespace(s.charAt(0));
+  }
+
+  private static boolean endsWithWhite(String s) {
+    return s.length() > 0 && isWhitespace(s.charAt(s.length() - 1));
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c==' ' || c=='\n' || c=='\t' || c=='\r';
+  }
+
+  private void newline() throws IOException {
+    if (currentFormat.getIndent() != null) {
+      out.write(currentFormat.getLineSeparator());
+    }
+  }
+
+  private void indent(int level) throws IOException {
+    String indent = currentFormat.getIndent();
+    if (indent == null || indent.equals("")) {
+      return;
+    }
+    for (int i = 0; i < level; i++) {
+      out.write(indent);
+    }
+  }
+
+  /**
+   * Indentation of attributes - one less than elements
+   * as a space is printed before each attribute.
+   */
+  private void indentAttribute(int level) throws IOException {
+    if (level <= 0) return;
+    String indent = currentFormat.getIndent();
+    for (int i = 0; i < level-1; i++) {
+      out.write(indent);
+    }
+    out.write(indent.substring(0, indent.length()-1));
+  }
+
+}
@@ -21,13 +21,16 @@ package dk.hippogrif.prettyxml;
 
 import java.io.*;
 import java.util.*;
+import javax.xml.transform.Result;
 
 import org.jdom.output.*;
 import org.jdom.*;
 
 /**
  * An extension to JDOM's {@link org.jdom.output.XMLOutputter XMLOutputter} providing attribute sorting and indentation.<p>
- * This code is not threadsafe, indentation level is handled with a private member.<p>
+ * A configured outputter may be shared by threads - each output call works on a private copy
+ * holding the state of the call, i.e., indentation level, current format and escaping.
+ * Changing format or options while output is in progress is not threadsafe.<p>
  * Private methods copied from JDOM 1.0, XMLOutputter.java revision 1.112
  *
  * @author Jesper Goertz
@@ -36,6 +39,18 @@ public class PrettyXMLOutputter extends XMLOutputter {
     private boolean sortAttributes;
     private boolean indentAttributes;
     private int level;
+    /** Attributes in print order, private to a call */
+    private Attribute[] ordered;
+    /** Sorted orders of attribute lists, shared by the copies made for each call */
+    private AttributeOrder[] orders = new AttributeOrder[AttributeOrder.CACHE];
+    /** Rendered line breaks, shared by the copies made for each call and set by any of them */
+    private volatile LineBreaks lineBreaks;
+    /** Whether output escaping is enabled in the call */
+    private boolean escapeOutput = true;
+    /** The format of the call restored by xml:space="default" */
+    private Format userFormat;
+    /** Job of the call told of the elements written */
+    private Job job;
     
     /** Creates a new instance of PrettyXMLOutputter */
     public PrettyXMLOutputter() {
@@ -101,51 +116,475 @@ public class PrettyXMLOutputter extends XMLOutputter {
         return indentAttributes;
     }
     
+    /**
+     * Get a copy of this outputter for printing within a single call.
+     */
+    private PrettyXMLOutputter forCall() {
+        if (currentFormat.getIndent() != null) {
+            // rendered here to be kept for later calls
+            lineBreaks();
+        }
+        PrettyXMLOutputter copy = (PrettyXMLOutputter) clone();
+        copy.ordered = null;
+        copy.escapeOutput = true;
+        copy.userFormat = currentFormat;
+        return copy;
+    }
+    
+    /**
+     * Print out an element to a stream encoded by an {@link EncodingWriter}
+     * when possible.
+     */
+    public void output(Element element, OutputStream out) throws IOException {
+        output(element, EncodingWriter.makeWriter(out, currentFormat.getEncoding()));
+    }
+    
+    public void output(Element element, Writer out) throws IOException {
+        forCall().outputElement(element, out);
+    }
+    
+    private void outputElement(Element element, Writer out) throws IOException {
+        super.output(element, out);
+    }
+    
+    public void outputElementContent(Element element, Writer out) throws IOException {
+        forCall().outputContent(element, out);
+    }
+    
+    private void outputContent(Element element, Writer out) throws IOException {
+        super.outputElementContent(element, out);
+    }
+    
+    public void output(List list, Writer out) throws IOException {
+        forCall().outputList(list, out);
+    }
+    
+    private void outputList(List list, Writer out) throws IOException {
+        super.output(list, out);
+    }
+    
+    /**
+     * Print out a processing instruction verbatim, disregarding TrAX escaping PIs,
+     * without changing the format as XMLOutputter does.
+     */
+    public void output(ProcessingInstruction pi, Writer out) throws IOException {
+        out.write("<?");
+        out.write(pi.getTarget());
+        if (!"".equals(pi.getData())) {
+            out.write(" ");
+            out.write(pi.getData());
+        }
+        out.write("?>");
+        out.flush();
+    }
+    
+    /**
+     * Print out an element with its descendants - the content is walked
+     * with a stack of open elements instead of recursing, so documents
+     * of any depth can be printed.
+     */
     protected void printElement(Writer out, Element element,
             int level, NamespaceStack namespaces)
             throws IOException {
-        this.level = level;
-        super.printElement(out, element, level, namespaces);
+        Frame[] stack = new Frame[16];
+        stack[0] = new Frame();
+        if (!startElement(out, element, level, namespaces, stack[0])) {
+            return;
+        }
+        int depth = 0;
+        while (depth >= 0) {
+            Frame frame = stack[depth];
+            Element child = printContent(out, frame);
+            if (child == null) {
+                endElement(out, frame, namespaces);
+                depth--;
+                continue;
+            }
+            if (++depth == stack.length) {
+                Frame[] grown = new Frame[depth * 2];
+                System.arraycopy(stack, 0, grown, 0, depth);
+                stack = grown;
+            }
+            if (stack[depth] == null) {
+                stack[depth] = new Frame();
+            }
+            if (!startElement(out, child, frame.level + 1, namespaces, stack[depth])) {
+                depth--;
+            }
+        }
     }
     
-    protected void printAttributes(Writer out, List attributes, Element parent,
+    /**
+     * An element whose content is being printed.
+     */
+    private static final class Frame {
+        private Element element;
+        private List content;
+        /** Index of the next content to print */
+        private int index;
+        private int level;
+        /** Size of the namespace stack before the element */
+        private int namespaces;
+        /** Format restored after the element */
+        private Format format;
+    }
+    
+    /**
+     * Print the start of an element, and the rest of it unless the
+     * content is mixed and has to be printed node by node.
+     *
+     * @return true iff the content is left to print as given by frame
+     */
+    private boolean startElement(Writer out, Element element, int level,
+            NamespaceStack namespaces, Frame frame)
+            throws IOException {
+        
+        if (job != null) {
+            job.elementWritten();
+        }
+        
+        List attributes = element.getAttributes();
+        List content = element.getContent();
+        
+        // Check for xml:space and adjust format settings
+        String space = null;
+        if (attributes != null) {
+            space = element.getAttributeValue("space",
+                    Namespace.XML_NAMESPACE);
+        }
+        
+        Format previousFormat = currentFormat;
+        
+        if ("default".equals(space) && userFormat != null) {
+            currentFormat = userFormat;
+        } else if ("preserve".equals(space)) {
+            currentFormat = preserveFormat;
+        }
+        
+        // Print the beginning of the tag plus attributes and any
+        // necessary namespace declarations
+        out.write("<");
+        printQualifiedName(out, element);
+        
+        // Mark our namespace starting point
+        int previouslyDeclaredNamespaces = namespaces.size();
+        
+        // Print the element's namespace, if appropriate
+        printElementNamespace(out, element, namespaces);
+        
+        // Print out additional namespace declarations
+        printAdditionalNamespaces(out, element, namespaces);
+        
+        // Print out attributes
+        if (attributes != null) {
+            this.level = level;
+            printAttributes(out, attributes, element, namespaces);
+        }
+        
+        int start = skipLeadingWhite(content, 0);
+        int size = content.size();
+        if (start >= size) {
+            // Case content is empty or all insignificant whitespace
+            if (currentFormat.getExpandEmptyElements()) {
+                out.write("></");
+                printQualifiedName(out, element);
+                out.write(">");
+            } else {
+                out.write(" />");
+            }
+        } else {
+            out.write(">");
+            
+            // For a special case where the content is only CDATA
+            // or Text we don't want to indent after the start or
+            // before the end tag.
+            
+            if (nextNonText(content, start) < size) {
+                // Case Mixed Content - normal indentation
+                frame.element = element;
+                frame.content = content;
+                frame.index = start;
+                frame.level = level;
+                frame.namespaces = previouslyDeclaredNamespaces;
+                frame.format = previousFormat;
+                return true;
+            } else {
+                // Case all CDATA or Text - no indentation
+                printTextRange(out, content, start, size);
+            }
+            out.write("</");
+            printQualifiedName(out, element);
+            out.write(">");
+        }
+        
+        // remove declared namespaces from stack
+        while (namespaces.size() > previouslyDeclaredNamespaces) {
+            namespaces.pop();
+        }
+        
+        // Restore our format settings
+        currentFormat = previousFormat;
+        return false;
+    }
+    
+    /**
+     * Print the end of an element whose content has been printed.
+     */
+    private void endElement(Writer out, Frame frame,
             NamespaceStack namespaces)
             throws IOException {
-        if (sortAttributes) {
-            TreeMap map = new TreeMap();
-            for (int i = 0; i < attributes.size(); i++) {
-                Attribute attribute = (Attribute) attributes.get(i);
-                map.put(attribute.getQualifiedName(), attribute);
+        lineBreak(out, frame.level);
+        out.write("</");
+        printQualifiedName(out, frame.element);
+        out.write(">");
+        
+        // remove declared namespaces from stack
+        while (namespaces.size() > frame.namespaces) {
+            namespaces.pop();
+        }
+        
+        // Restore our format settings
+        currentFormat = frame.format;
+        frame.element = null;
+        frame.content = null;
+        frame.format = null;
+    }
+    
+    /**
+     * Print the content of an element each on a new line - the first node
+     * on the line following the start tag - up to the next child element.
+     *
+     * @return the child element to print next, null when all content is printed
+     */
+    private Element printContent(Writer out, Frame frame)
+            throws IOException {
+        List content = frame.content;
+        int end = content.size();
+        int level = frame.level + 1;
+        Object next;       // Node we're about to print
+        int first, index;  // Indexes into the list of content
+        
+        index = frame.index;
+        while (index < end) {
+            next = content.get(index);
+            
+            //
+            // Handle consecutive CDATA, Text, and EntityRef nodes all at once
+            //
+            if ((next instanceof Text) || (next instanceof EntityRef)) {
+                first = skipLeadingWhite(content, index);
+                // Set index to next node for loop
+                index = nextNonText(content, first);
+                
+                // If it's not all whitespace - print it!
+                if (first < index) {
+                    lineBreak(out, level);
+                    printTextRange(out, content, first, index);
+                }
+                continue;
+            }
+            
+            //
+            // Handle other nodes
+            //
+            lineBreak(out, level);
+            index++;
+            
+            if (next instanceof Comment) {
+                printComment(out, (Comment)next);
+            } else if (next instanceof Element) {
+                frame.index = index;
+                return (Element)next;
+            } else if (next instanceof ProcessingInstruction) {
+                printProcessingInstruction(out, (ProcessingInstruction)next);
+            } else {
+                // XXX if we get here then we have a illegal content, for
+                //     now we'll just ignore it (probably should throw
+                //     a exception)
             }
-            attributes = new ArrayList(map.values());
-        }
-        if (indentAttributes && attributes.size()>0 && 
-                currentFormat.getIndent() != null && !currentFormat.getIndent().equals("")) {
-            for (int i = 0; i < attributes.size(); i++) {
-                newline(out);
-                indent(out, level+1);
-                Attribute attribute = (Attribute) attributes.get(i);
-                Namespace ns = attribute.getNamespace();
-                if ((ns != Namespace.NO_NAMESPACE) &&
-                        (ns != Namespace.XML_NAMESPACE)) {
-                    printNamespace(out, ns, namespaces);
+        } /* while */
+        frame.index = index;
+        return null;
+    }
+    
+    private void printTextRange(Writer out, List content, int start, int end
+            ) throws IOException {
+        String previous; // Previous text printed
+        Object node;     // Next node to print
+        String next;     // Next text to print
+        
+        previous = null;
+        
+        // Remove leading whitespace-only nodes
+        start = skipLeadingWhite(content, start);
+        
+        int size = content.size();
+        if (start < size) {
+            // And remove trialing whitespace-only nodes
+            end = skipTrailingWhite(content, end);
+            
+            for (int i = start; i < end; i++) {
+                node = content.get(i);
+                
+                // Get the unmangled version of the text
+                // we are about to print
+                if (node instanceof Text) {
+                    next = ((Text) node).getText();
+                } else if (node instanceof EntityRef) {
+                    next = "&" + ((EntityRef) node).getValue() + ";";
+                } else {
+                    throw new IllegalStateException("Should see only " +
+                            "CDATA, Text, or EntityRef");
+                }
+                
+                // This may save a little time
+                if (next == null || "".equals(next)) {
+                    continue;
+                }
+                
+                // Determine if we need to pad the output (padding is
+                // only need in trim or normalizing mode)
+                if (previous != null) { // Not 1st node
+                    if (currentFormat.getTextMode() == Format.TextMode.NORMALIZE ||
+                            currentFormat.getTextMode() == Format.TextMode.TRIM) {
+                        if ((endsWithWhite(previous)) ||
+                                (startsWithWhite(next))) {
+                            out.write(" ");
+                        }
+                    }
                 }
                 
-                out.write(" ");
-                printQualifiedName(out, attribute);
-                out.write("=");
+                // Print the node
+                if (node instanceof CDATA) {
+                    printCDATA(out, (CDATA) node);
+                } else if (node instanceof EntityRef) {
+                    printEntityRef(out, (EntityRef) node);
+                } else {
+                    printString(out, next);
+                }
                 
-                out.write("\"");
-                out.write(escapeAttributeEntities(attribute.getValue()));
-                out.write("\"");
+                previous = next;
+            }
+        }
+    }
+    
+    private void printString(Writer out, String str) throws IOException {
+        Escaper.writeText(out, str, currentFormat, escapeOutput);
+    }
+    
+    protected void printText(Writer out, Text text) throws IOException {
+        Escaper.writeText(out, text.getText(), currentFormat, escapeOutput);
+    }
+    
+    protected void printCDATA(Writer out, CDATA cdata) throws IOException {
+        Escaper.writeCDATA(out, cdata.getText(), currentFormat);
+    }
+    
+    protected void printProcessingInstruction(Writer out, ProcessingInstruction pi
+            ) throws IOException {
+        // follow the TrAX escaping PIs as XMLOutputter does
+        if (!currentFormat.getIgnoreTrAXEscapingPIs()) {
+            if (pi.getTarget().equals(Result.PI_DISABLE_OUTPUT_ESCAPING)) {
+                escapeOutput = false;
+            } else if (pi.getTarget().equals(Result.PI_ENABLE_OUTPUT_ESCAPING)) {
+                escapeOutput = true;
+            }
+        }
+        super.printProcessingInstruction(out, pi);
+    }
+    
+    private void printElementNamespace(Writer out, Element element,
+            NamespaceStack namespaces)
+            throws IOException {
+        // Add namespace decl only if it's not the XML namespace and it's
+        // not the NO_NAMESPACE with the prefix "" not yet mapped
+        // (we do output xmlns="" if the "" prefix was already used and we
+        // need to reclaim it for the NO_NAMESPACE)
+        Namespace ns = element.getNamespace();
+        if (ns == Namespace.XML_NAMESPACE) {
+            return;
+        }
+        if ( !((ns == Namespace.NO_NAMESPACE) &&
+                (namespaces.getURI("") == null))) {
+            printNamespace(out, ns, namespaces);
+        }
+    }
+    
+    private void printAdditionalNamespaces(Writer out, Element element,
+            NamespaceStack namespaces)
+            throws IOException {
+        List list = element.getAdditionalNamespaces();
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                Namespace additional = (Namespace)list.get(i);
+                printNamespace(out, additional, namespaces);
             }
-            newline(out);
-            indent(out, level);
+        }
+    }
+    
+    protected void printAttributes(Writer out, List attributes, Element parent,
+            NamespaceStack namespaces)
+            throws IOException {
+        int size = attributes.size();
+        Attribute[] ordered = order(attributes);
+        boolean indent = indentAttributes && size>0 && 
+                currentFormat.getIndent() != null && !currentFormat.getIndent().equals("");
+        for (int i = 0; i < size; i++) {
+            if (indent) {
+                attributeBreak(out, level+1);
+            }
+            Attribute attribute = ordered[i];
+            ordered[i] = null;
+            Namespace ns = attribute.getNamespace();
+            if ((ns != Namespace.NO_NAMESPACE) &&
+                    (ns != Namespace.XML_NAMESPACE)) {
+                printNamespace(out, ns, namespaces);
+            }
+            
+            out.write(" ");
+            printQualifiedName(out, attribute);
+            out.write("=");
+            
+            out.write("\"");
+            Escaper.writeAttribute(out, attribute.getValue(), currentFormat);
+            out.write("\"");
+        }
+        if (indent) {
+            attributeBreak(out, level);
             List content = parent.getContent();
             int start = skipLeadingWhite(content, 0);
-            int size = content.size();
-            if (start<size && level>0) out.write(" ");
-        } else super.printAttributes(out, attributes, parent, namespaces);
+            if (start<content.size() && level>0) out.write(" ");
+        }
+    }
+    
+    /**
+     * Get the cache of attribute orders shared with the handlers streaming
+     * with the format and options of this outputter.
+     */
+    AttributeOrder[] getAttributeOrders() {
+        return orders;
+    }
+    
+    /**
+     * Get the attributes in print order in the scratch array of this call,
+     * sorted by qualified name if sortAttributes.
+     */
+    private Attribute[] order(List attributes) {
+        int size = attributes.size();
+        if (ordered == null || ordered.length < size) {
+            ordered = new Attribute[Math.max(size, 8)];
+        }
+        if (!sortAttributes || size < 2) {
+            for (int i = 0; i < size; i++) {
+                ordered[i] = (Attribute) attributes.get(i);
+            }
+            return ordered;
+        }
+        AttributeOrder order = AttributeOrder.get(orders, attributes);
+        for (int i = 0; i < size; i++) {
+            ordered[i] = (Attribute) attributes.get(order.permutation[i]);
+        }
+        return ordered;
     }
     
     private void printNamespace(Writer out, Namespace ns,
@@ -170,6 +609,16 @@ public class PrettyXMLOutputter extends XMLOutputter {
         namespaces.push(ns);
     }
     
+    private void printQualifiedName(Writer out, Element e) throws IOException {
+        if (e.getNamespace().getPrefix().length() == 0) {
+            out.write(e.getName());
+        } else {
+            out.write(e.getNamespace().getPrefix());
+            out.write(':');
+            out.write(e.getName());
+        }
+    }
+    
     private void printQualifiedName(Writer out, Attribute a) throws IOException {
         String prefix = a.getNamespace().getPrefix();
         if ((prefix != null) && (!prefix.equals(""))) {
@@ -181,16 +630,130 @@ public class PrettyXMLOutputter extends XMLOutputter {
         }
     }
     
-    private void indent(Writer out, int level) throws IOException {
-        if (level <= 0) return;
-        for (int i = 0; i < level-1; i++) {
-            out.write(currentFormat.getIndent());
+    /**
+     * Print a line separator followed by indentation of content at the given level.
+     */
+    private void lineBreak(Writer out, int level) throws IOException {
+        if (currentFormat.getIndent() != null) {
+            lineBreaks().write(out, false, level);
+        }
+    }
+    
+    /**
+     * Print a line separator followed by indentation of attributes at the
+     * given level, i.e., one char less than content as each attribute starts
+     * with a space.
+     */
+    private void attributeBreak(Writer out, int level) throws IOException {
+        lineBreaks().write(out, true, level);
+    }
+    
+    private LineBreaks lineBreaks() {
+        String indent = currentFormat.getIndent();
+        String separator = currentFormat.getLineSeparator();
+        LineBreaks breaks = lineBreaks;
+        if (breaks == null || !breaks.matches(indent, separator)) {
+            breaks = new LineBreaks(indent, separator);
+            lineBreaks = breaks;
         }
-        String indent = currentFormat.getIndent().substring(0, currentFormat.getIndent().length()-1);
-        out.write(indent);
+        return breaks;
+    }
+    
+    /**
+     * Line separator followed by indentation for each level rendered
+     * once and grown as deeper levels are printed.
+     * The tables are replaced, never changed, when grown so an instance
+     * can be shared by the copies made for each call without locking -
+     * it is published through a volatile field as its tables are volatile
+     * and not covered by the guarantee for final fields.
+     * Levels beyond the tables are written from the deepest rendered one
+     * as the size of the tables grows with the square of the depth.
+     */
+    private static final class LineBreaks {
+        private static final int LEVELS = 256;
+        private final String indent;
+        private final String separator;
+        private volatile char[][] content = new char[0][];
+        private volatile char[][] attributes = new char[0][];
+        
+        LineBreaks(String indent, String separator) {
+            this.indent = indent;
+            this.separator = separator;
+        }
+        
+        boolean matches(String indent, String separator) {
+            return (this.indent == indent || this.indent.equals(indent)) &&
+                    (this.separator == separator || this.separator.equals(separator));
+        }
+        
+        void write(Writer out, boolean attribute, int level) throws IOException {
+            if (level < 0) {
+                level = 0;
+            }
+            char[][] table = attribute ? attributes : content;
+            int rendered = Math.min(level, LEVELS - 1);
+            char[] cbuf = rendered < table.length ? table[rendered]
+                    : grow(attribute, rendered);
+            out.write(cbuf, 0, cbuf.length);
+            for (int i = LEVELS - 1; i < level; i++) {
+                out.write(indent);
+            }
+        }
+        
+        private synchronized char[] grow(boolean attribute, int level) {
+            char[][] table = attribute ? attributes : content;
+            if (level < table.length) {
+                return table[level];
+            }
+            char[][] grown = new char[Math.min(Math.max(level + 1, 2 * table.length), LEVELS)][];
+            System.arraycopy(table, 0, grown, 0, table.length);
+            StringBuffer sb = new StringBuffer(separator);
+            for (int i = 0; i < grown.length; i++) {
+                if (i >= table.length) {
+                    sb.setLength(separator.length());
+                    int n = attribute && i > 0 ? i - 1 : i;
+                    for (int j = 0; j < n; j++) {
+                        sb.append(indent);
+                    }
+                    if (attribute && i > 0) {
+                        sb.append(indent.substring(0, indent.length() - 1));
+                    }
+                    grown[i] = sb.toString().toCharArray();
+                }
+            }
+            if (attribute) {
+                attributes = grown;
+            } else {
+                content = grown;
+            }
+            return grown[level];
+        }
+    }
+    
+    /**
+     * Print out a document to a stream encoded by an {@link EncodingWriter}
+     * when possible.
+     */
+    public void output(Document doc, OutputStream out) throws IOException {
+        output(doc, EncodingWriter.makeWriter(out, currentFormat.getEncoding()));
     }
     
     public void output(Document doc, Writer out) throws IOException {
+        forCall().outputDocument(doc, out);
+    }
+    
+    /**
+     * Print out a document as a job checked and told of the elements written.
+     *
+     * @throws InterruptedIOException if the job is cancelled or past its deadline
+     */
+    void output(Document doc, Writer out, Job job) throws IOException {
+        PrettyXMLOutputter copy = forCall();
+        copy.job = job;
+        copy.outputDocument(doc, out);
+    }
+    
+    private void outputDocument(Document doc, Writer out) throws IOException {
 
         printDeclaration(out, doc, currentFormat.getEncoding());
 
@@ -222,8 +785,7 @@ public class PrettyXMLOutputter extends XMLOutputter {
                 //     now we'll just ignore it
             }
 
-            newline(out);
-            indent(out, 0);
+            lineBreak(out, 0);
         }
 
         // Output final line separator unless already done
@@ -235,12 +797,6 @@ public class PrettyXMLOutputter extends XMLOutputter {
         out.flush();
     }
 
-    private void newline(Writer out) throws IOException {
-        if (currentFormat.getIndent() != null) {
-            out.write(currentFormat.getLineSeparator());
-        }
-    }
-    
     private NamespaceStack createNamespaceStack() {
        // actually returns a XMLOutputter.NamespaceStack (see below)
        return new MyNamespaceStack();
@@ -300,4 +856,58 @@ public class PrettyXMLOutputter extends XMLOutputter {
         }
         return false;
     }
+
+    private int skipTrailingWhite(List content, int start) {
+        int size = content.size();
+        if (start > size) {
+            start = size;
+        }
+
+        int index = start;
+        if (currentFormat.getTextMode() == Format.TextMode.TRIM_FULL_WHITE
+                || currentFormat.getTextMode() == Format.TextMode.NORMALIZE
+                || currentFormat.getTextMode() == Format.TextMode.TRIM) {
+            while (index >= 0) {
+                if (!isAllWhitespace(content.get(index - 1)))
+                    break;
+                --index;
+            }
+        }
+        return index;
+    }
+
+    private static int nextNonText(List content, int start) {
+        if (start < 0) {
+            start = 0;
+        }
+
+        int index = start;
+        int size = content.size();
+        while (index < size) {
+            Object node =  content.get(index);
+            if (!((node instanceof Text) || (node instanceof EntityRef))) {
+                return index;
+            }
+            index++;
+        }
+        return size;
+    }
+
+    private boolean startsWithWhite(String str) {
+        if ((str != null) &&
+            (str.length() > 0) &&
+            isWhitespace(str.charAt(0))) {
+           return true;
+        }
+        return false;
+    }
+
+    private boolean endsWithWhite(String str) {
+        if ((str != null) &&
+            (str.length() > 0) &&
+            isWhitespace(str.charAt(str.length() - 1))) {
+           return true;
+        }
+        return false;
+    }
 }
@@ -67,6 +67,11 @@ public interface PropertyNames {
    * TRUE or FALSE
    */
   String INDENT_ATTRIBUTES = "indentAttributes";
+  /**
+   * TRUE (default) or FALSE - when FALSE the external DTD subset is not
+   * read, so entities it declares are undefined and attributes get no defaults
+   */
+  String LOAD_EXTERNAL_DTD = "loadExternalDTD";
   /**
    * Stylesheet names separated by ";"
    */
@@ -83,14 +88,47 @@ public interface PropertyNames {
    * File name
    */
   String OUTPUT = "output";
+  /**
+   * TRUE or FALSE - prettyprint while parsing without building a document,
+   * the stylesheets of TRANSFORM are chained and run while parsing
+   */
+  String STREAM = "stream";
+  /**
+   * Positive integer - max no of bytes read, or characters if the
+   * document is read as text
+   */
+  String MAX_INPUT_BYTES = "maxInputBytes";
+  /**
+   * Positive integer - max depth of elements, the root is at depth 1
+   */
+  String MAX_DEPTH = "maxDepth";
+  /**
+   * Positive integer - max no of attributes of an element
+   */
+  String MAX_ATTRIBUTES = "maxAttributes";
+  /**
+   * Positive integer - max length of text between tags, attribute values
+   * and comments
+   */
+  String MAX_TEXT_LENGTH = "maxTextLength";
+  /**
+   * Positive integer - max no of entity references expanded, also in
+   * attribute values and the DTD when the parser supports the JAXP limit
+   */
+  String MAX_ENTITY_EXPANSIONS = "maxEntityExpansions";
   
   /**
    * Basic properties for specifying format and handling.
    */
-  String[] BASIC_KEYS = new String[]{ENCODING, EXPAND_EMPTY_ELEMENTS, INDENT, LINE_SEPARATOR, OMIT_DECLARATION, OMIT_ENCODING, TEXT_MODE, SORT_ATTRIBUTES, INDENT_ATTRIBUTES, TRANSFORM};
+  String[] BASIC_KEYS = new String[]{ENCODING, EXPAND_EMPTY_ELEMENTS, INDENT, LINE_SEPARATOR, OMIT_DECLARATION, OMIT_ENCODING, TEXT_MODE, SORT_ATTRIBUTES, INDENT_ATTRIBUTES, LOAD_EXTERNAL_DTD, TRANSFORM};
+  /**
+   * Extended properties for specifying document location and handling.
+   */
+  String[] EXTENDED_KEYS = new String[]{INPUT, URL, OUTPUT, STREAM};
   /**
-   * Extended properties for specifying document location.
+   * Limits on documents enforced while parsing and transforming - a
+   * document exceeding one fails, no limit if not present.
    */
-  String[] EXTENDED_KEYS = new String[]{INPUT, URL, OUTPUT};
+  String[] LIMIT_KEYS = new String[]{MAX_INPUT_BYTES, MAX_DEPTH, MAX_ATTRIBUTES, MAX_TEXT_LENGTH, MAX_ENTITY_EXPANSIONS};
   
 }
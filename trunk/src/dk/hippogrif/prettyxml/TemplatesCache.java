@@ -0,0 +1,193 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * A cache of compiled stylesheets keyed by canonical file path or resource url.
+ * An entry is recompiled when the modification time of the file changes
+ * and the least recently used entry is evicted when the cache is full.<p>
+ * The cache is threadsafe. A lookup takes no lock - the map is replaced
+ * when entries are added or removed - and compilation is done outside
+ * the lock so readers are not blocked by a stylesheet being compiled.
+ * A lookup only locks to count it and stamp the recency of its entry.
+ * The compiled {@link Templates} are threadsafe and give a new
+ * Transformer for each use.
+ */
+public class TemplatesCache {
+
+  private int maxSize;
+  private volatile HashMap map = new HashMap();
+  private long clock;
+  private long hits;
+  private long misses;
+
+  private static class Entry {
+    Templates templates;
+    long lastModified;
+    volatile long used;
+
+    Entry(Templates templates, long lastModified) {
+      this.templates = templates;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * Create cache.
+   *
+   * @param maxSize max no of compiled stylesheets held
+   */
+  public TemplatesCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get compiled stylesheet, compiling it if not cached or modified since.
+   *
+   * @param file holding the stylesheet
+   * @throws Exception if stylesheet not found or in error
+   */
+  public Templates get(File file) throws Exception {
+    if (!file.isFile()) {
+      throw new Exception("cannot find stylesheet "+file);
+    }
+    return get(file.getCanonicalPath(), file.lastModified(), new StreamSource(file));
+  }
+
+  /**
+   * Get compiled stylesheet resource, compiling it if not cached -
+   * a resource is not expected to change.
+   *
+   * @param url of the stylesheet resource
+   * @throws Exception if stylesheet in error
+   */
+  public Templates get(URL url) throws Exception {
+    String systemId = url.toExternalForm();
+    return get(systemId, 0, new StreamSource(systemId));
+  }
+
+  private Templates get(String key, long lastModified, Source source) throws Exception {
+    Entry entry = (Entry)map.get(key);
+    if (entry != null && entry.lastModified == lastModified) {
+      entry.used = count(true);
+      return entry.templates;
+    }
+    long used = count(false);
+    Templates templates = TransformerFactory.newInstance().newTemplates(source);
+    entry = new Entry(templates, lastModified);
+    entry.used = used;
+    synchronized (this) {
+      HashMap m = new HashMap(map);
+      m.put(key, entry);
+      evict(m, maxSize);
+      map = m;
+    }
+    return templates;
+  }
+
+  /**
+   * Count a lookup and get the stamp of its recency.
+   */
+  private synchronized long count(boolean hit) {
+    if (hit) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return ++clock;
+  }
+
+  /**
+   * Remove least recently used entries until no more than max are left.
+   */
+  private static void evict(HashMap m, int max) {
+    while (m.size() > max) {
+      Object eldest = null;
+      long used = Long.MAX_VALUE;
+      for (Iterator iter = m.entrySet().iterator(); iter.hasNext(); ) {
+        Map.Entry e = (Map.Entry)iter.next();
+        long u = ((Entry)e.getValue()).used;
+        if (u < used) {
+          used = u;
+          eldest = e.getKey();
+        }
+      }
+      m.remove(eldest);
+    }
+  }
+
+  /**
+   * Remove all entries - counters are kept.
+   */
+  public synchronized void clear() {
+    map = new HashMap();
+  }
+
+  /**
+   * Get no of cached stylesheets.
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * Get max no of cached stylesheets.
+   */
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Set max no of cached stylesheets, evicting least recently used if needed.
+   */
+  public synchronized void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+    HashMap m = new HashMap(map);
+    evict(m, maxSize);
+    map = m;
+  }
+
+  /**
+   * Get no of lookups served from the cache.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get no of lookups which compiled the stylesheet.
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public String toString() {
+    return "TemplatesCache[size="+size()+" maxSize="+getMaxSize()+" hits="+getHits()+" misses="+getMisses()+"]";
+  }
+
+}
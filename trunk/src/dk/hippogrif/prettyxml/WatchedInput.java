@@ -0,0 +1,86 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Input whose reads are told to a watcher which may stop them.
+ */
+final class WatchedInput {
+
+  /**
+   * Told of the bytes or characters read.
+   */
+  interface Watcher {
+    /**
+     * @throws IOException to stop reading
+     */
+    void read(int n) throws IOException;
+  }
+
+  private WatchedInput() {
+  }
+
+  /**
+   * Get source whose stream tells the watcher what is read -
+   * the source is returned as is if it has no stream.
+   */
+  static InputSource wrap(InputSource input, final Watcher watcher) {
+    InputSource source = new InputSource(input.getSystemId());
+    source.setPublicId(input.getPublicId());
+    source.setEncoding(input.getEncoding());
+    if (input.getCharacterStream() != null) {
+      source.setCharacterStream(new FilterReader(input.getCharacterStream()) {
+        public int read() throws IOException {
+          int c = super.read();
+          watcher.read(c < 0 ? 0 : 1);
+          return c;
+        }
+
+        public int read(char[] cbuf, int off, int len) throws IOException {
+          int n = super.read(cbuf, off, len);
+          watcher.read(n < 0 ? 0 : n);
+          return n;
+        }
+      });
+    } else if (input.getByteStream() != null) {
+      source.setByteStream(new FilterInputStream(input.getByteStream()) {
+        public int read() throws IOException {
+          int b = super.read();
+          watcher.read(b < 0 ? 0 : 1);
+          return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+          int n = super.read(b, off, len);
+          watcher.read(n < 0 ? 0 : n);
+          return n;
+        }
+      });
+    } else {
+      return input;
+    }
+    return source;
+  }
+
+}
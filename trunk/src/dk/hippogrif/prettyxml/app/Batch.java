@@ -0,0 +1,291 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml.app;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import dk.hippogrif.prettyxml.*;
+
+/**
+ * Prettyprints many files in one run on a pool of worker threads
+ * writing the output to a tree mirroring the input.<p>
+ * Inputs are files, directories (all *.xml files below) or glob patterns
+ * where * and ? match within a name and ** matches any number of directories.
+ * The largest files are formatted first to even out the load on the workers.
+ * A failing file is reported and does not stop the run.
+ */
+public class Batch {
+
+  private static Logger logger = Logger.getLogger(Batch.class.getName());
+
+  private PrettyPrinter printer;
+  private File outputDir;
+  private int workers;
+  private ArrayList jobs = new ArrayList();
+  private HashSet inputs = new HashSet();
+  // output path to the input written there
+  private HashMap outputs = new HashMap();
+  private int next;
+  private int done;
+  private ArrayList failures = new ArrayList();
+
+  /**
+   * A file to prettyprint.
+   */
+  static class Job {
+    File input;
+    String path;
+    long size;
+
+    Job(File input, String path) {
+      this.input = input;
+      this.path = path;
+      size = input.length();
+    }
+  }
+
+  /**
+   * Create batch.
+   *
+   * @param prop holds the format and options shared by all files
+   * @param outputDir the root of the output tree
+   * @param workers no of worker threads
+   * @throws Exception if property error or stylesheet not found or in error
+   */
+  public Batch(Properties prop, File outputDir, int workers) throws Exception {
+    // set up once and shared by the workers
+    printer = new PrettyPrinter.Builder().setProperties(prop).build();
+    this.outputDir = outputDir;
+    this.workers = workers < 1 ? 1 : workers;
+  }
+
+  /**
+   * Add a file, a directory or a glob pattern - a file added again is
+   * ignored.
+   *
+   * @throws Exception if nothing found or another input has the same output
+   */
+  public void addInput(String name) throws Exception {
+    File file = new File(name);
+    if (file.isFile()) {
+      addJob(file, file.getName());
+    } else if (file.isDirectory()) {
+      addFiles(file, "", Pattern.compile(".*\\.xml"), true);
+    } else {
+      String s = name.replace(File.separatorChar, '/');
+      int wild = indexOfWildcard(s);
+      if (wild < 0) {
+        throw new Exception("cannot find input "+name);
+      }
+      int slash = s.lastIndexOf('/', wild);
+      File dir = new File(slash < 0 ? "." : (slash == 0 ? "/" : s.substring(0, slash)));
+      String glob = s.substring(slash+1);
+      if (!dir.isDirectory()) {
+        throw new Exception("cannot find input directory "+dir);
+      }
+      // subdirectories are only walked if the glob may match below them
+      addFiles(dir, "", globPattern(glob), glob.indexOf('/') >= 0 || glob.indexOf("**") >= 0);
+    }
+  }
+
+  /**
+   * Add the inputs listed one per line in a file - empty lines
+   * and lines starting with # are ignored.
+   *
+   * @throws Exception if io error, input not found or another input has the same output
+   */
+  public void addInputList(File list) throws Exception {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new FileReader(list));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0 && !line.startsWith("#")) {
+          addInput(line);
+        }
+      }
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+  }
+
+  private void addFiles(File dir, String path, Pattern pattern, boolean recurse) throws Exception {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (int i=0; i<files.length; i++) {
+      String name = path + files[i].getName();
+      if (files[i].isDirectory()) {
+        if (recurse) {
+          addFiles(files[i], name + "/", pattern, recurse);
+        }
+      } else if (pattern.matcher(name).matches()) {
+        addJob(files[i], name);
+      }
+    }
+  }
+
+  private void addJob(File file, String path) throws Exception {
+    String input = file.getCanonicalPath();
+    if (inputs.contains(input)) {
+      return;
+    }
+    String other = (String)outputs.get(path);
+    if (other != null) {
+      throw new Exception("both "+other+" and "+input+" would be written to "+path);
+    }
+    inputs.add(input);
+    outputs.put(path, input);
+    jobs.add(new Job(file, path));
+  }
+
+  static int indexOfWildcard(String s) {
+    for (int i=0; i<s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '*' || c == '?') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Translate a glob pattern to a regular expression matching paths
+   * separated by /.
+   */
+  static Pattern globPattern(String glob) {
+    StringBuffer sb = new StringBuffer();
+    for (int i=0; i<glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        if (i+1 < glob.length() && glob.charAt(i+1) == '*') {
+          i++;
+          if (i+1 < glob.length() && glob.charAt(i+1) == '/') {
+            i++;
+            sb.append("(.*/)?");
+          } else {
+            sb.append(".*");
+          }
+        } else {
+          sb.append("[^/]*");
+        }
+      } else if (c == '?') {
+        sb.append("[^/]");
+      } else if (Character.isLetterOrDigit(c) || c == '/') {
+        sb.append(c);
+      } else {
+        sb.append('\\').append(c);
+      }
+    }
+    return Pattern.compile(sb.toString());
+  }
+
+  /**
+   * Get no of files to prettyprint.
+   */
+  public int size() {
+    return jobs.size();
+  }
+
+  /**
+   * Get failures as messages holding file name and error.
+   */
+  public List getFailures() {
+    return failures;
+  }
+
+  /**
+   * Prettyprint all files and wait for the workers to finish.
+   *
+   * @return no of failed files
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public int execute() throws InterruptedException {
+    Collections.sort(jobs, new Comparator() {
+      public int compare(Object o1, Object o2) {
+        long s1 = ((Job)o1).size;
+        long s2 = ((Job)o2).size;
+        return s1 > s2 ? -1 : (s1 < s2 ? 1 : 0);
+      }
+    });
+    next = 0;
+    done = 0;
+    failures.clear();
+    int n = Math.min(workers, jobs.size());
+    Thread[] threads = new Thread[n];
+    for (int i=0; i<n; i++) {
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          Job job;
+          while ((job = nextJob()) != null) {
+            execute(job);
+          }
+        }
+      }, "prettyxml-batch-"+i);
+      threads[i].start();
+    }
+    for (int i=0; i<n; i++) {
+      threads[i].join();
+    }
+    return failures.size();
+  }
+
+  private synchronized Job nextJob() {
+    if (next < jobs.size()) {
+      return (Job)jobs.get(next++);
+    }
+    return null;
+  }
+
+  private void execute(Job job) {
+    File output = new File(outputDir, job.path);
+    try {
+      File dir = output.getParentFile();
+      if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        throw new IOException("cannot create directory "+dir);
+      }
+      printer.format(job.input, output);
+      synchronized (this) {
+        done++;
+      }
+    } catch (Throwable e) {
+      // also an error, e.g., out of memory, fails only this file
+      logger.log(Level.FINE, job.input.getPath(), e);
+      synchronized (this) {
+        failures.add(job.input.getPath()+": "+(e instanceof Exception ? e.getMessage() : e.toString()));
+      }
+    }
+  }
+
+  /**
+   * Get no of files prettyprinted without error.
+   */
+  public synchronized int getDone() {
+    return done;
+  }
+
+}
@@ -70,6 +70,8 @@ public class Main {
     options.addOption("v", false, "version");
     options.addOption("s", false, "sort attributes on name");
     options.addOption("a", false, "indent attributes");
+    options.addOption("m", false, "stream without building a document");
+    options.addOption("f", false, "offline, only DTDs and entities in catalogs or cache");
     Option option;
     option = new Option("n", true, "no of spaces to indent, default 2");
     option.setArgName("no");
@@ -89,6 +91,24 @@ public class Main {
     option = new Option("o", true, "output file");
     option.setArgName("file");
     options.addOption(option);
+    option = new Option("b", true, "batch output dir for input files, dirs and globs as arguments");
+    option.setArgName("dir");
+    options.addOption(option);
+    option = new Option("l", true, "file listing batch inputs one per line");
+    option.setArgName("file");
+    options.addOption(option);
+    option = new Option("w", true, "no of batch or server worker threads, default no of processors");
+    option.setArgName("no");
+    options.addOption(option);
+    option = new Option("d", true, "serve documents posted over http on localhost port");
+    option.setArgName("port");
+    options.addOption(option);
+    option = new Option("c", true, "xml catalogs of local DTDs and entities separated by ;");
+    option.setArgName("files");
+    options.addOption(option);
+    option = new Option("e", true, "cache dir of fetched DTDs and entities");
+    option.setArgName("dir");
+    options.addOption(option);
     return options;
   }
   
@@ -107,14 +127,31 @@ public class Main {
     ps.println("  textMode = NORMALIZE | TRIM | TRIM_FULL_WHITE | PRESERVE (default)");
     ps.println("  indentAttributes = TRUE | FALSE (default)");
     ps.println("  sortAttributes = TRUE | FALSE (default)");
+    ps.println("  loadExternalDTD = TRUE (default) | FALSE");
     ps.println("  transform = an xslt pipeline of one or more stylesheets separated by ;");
     ps.println("  input = input file");
     ps.println("  url = input url");
     ps.println("  output = output file");
+    ps.println("  stream = TRUE | FALSE (default)");
+    ps.println("  maxInputBytes = max no of bytes read");
+    ps.println("  maxDepth = max depth of elements");
+    ps.println("  maxAttributes = max no of attributes of an element");
+    ps.println("  maxTextLength = max length of text, attribute value or comment");
+    ps.println("  maxEntityExpansions = max no of entity references expanded");
     ps.println("");
     ps.println("use the xslt pipeline to sort elements or filter nodes");
     ps.println("standard input is used if no file or url is specified");
     ps.println("standard output is used if no file is specified");
+    ps.println("in batch mode each input file, *.xml file in an input dir or file matching");
+    ps.println("an input glob (* and ? within names, ** for dirs) is prettyprinted to the");
+    ps.println("same relative path in the batch output dir - largest files first");
+    ps.println("in server mode a document posted to /format is returned prettyprinted,");
+    ps.println("the query may give setting=name replacing the options and properties");
+    ps.println("overriding them, e.g., /format?setting=compact&indent=4 - GET /health");
+    ps.println("and /metrics report status and counters");
+    ps.println("a posted document may not refer to external entities and its DTD is not loaded");
+    ps.println("DTDs and external entities are located in the xml catalogs, then in the");
+    ps.println("cache dir where they are stored when fetched - offline they are never fetched");
     ps.println("property file and transformation stylesheets are located in this order:");
     ps.println("  built-in, file, classpath resource");
     ps.print("built-in property files:");
@@ -141,6 +178,8 @@ public class Main {
   
   private static void usage(PrintStream ps) {
     ps.println("usage: prettyxml option+");
+    ps.println("       prettyxml -b dir option* input*");
+    ps.println("       prettyxml -d port option*");
     optionUsage(ps);
   }
   
@@ -173,7 +212,7 @@ public class Main {
   static CommandLine getCmdLine(String[] args) {
     initOptions();
     CommandLine cmd = parse(args);
-    if (args.length == 0 || cmd == null || cmd.getArgs().length > 0) {
+    if (args.length == 0 || cmd == null || (cmd.getArgs().length > 0 && !cmd.hasOption("b"))) {
       usage(System.out);
       cmd = null;
     } else if (cmd.hasOption("h")) {
@@ -220,6 +259,9 @@ public class Main {
     if (cmd.hasOption("u")) {
       prop.put(PrettyPrint.URL, cmd.getOptionValue("u"));
     }
+    if (cmd.hasOption("m")) {
+      prop.put(PrettyPrint.STREAM, "TRUE");
+    }
     PrettyPrint.checkProperties(prop, true);
     return prop;
   }
@@ -248,7 +290,84 @@ public class Main {
       return;
     }
     Properties prop = getProperties(cmd);
-    PrettyPrint.execute(prop);
+    PrettyPrint.setEntityResolver(getEntityCache(cmd));
+    if (cmd.hasOption("b")) {
+      batch(cmd, prop);
+    } else if (cmd.hasOption("d")) {
+      serve(cmd, prop);
+    } else {
+      PrettyPrint.execute(prop);
+    }
+  }
+  
+  static EntityCache getEntityCache(CommandLine cmd) throws Exception {
+    if (!cmd.hasOption("c") && !cmd.hasOption("e") && !cmd.hasOption("f")) {
+      return null;
+    }
+    EntityCache cache = new EntityCache(cmd.hasOption("e") ? new File(cmd.getOptionValue("e")) : null);
+    cache.setOffline(cmd.hasOption("f"));
+    if (cmd.hasOption("c")) {
+      String[] sa = cmd.getOptionValue("c").split(";");
+      for (int i=0; i<sa.length; i++) {
+        cache.addCatalog(new File(sa[i].trim()));
+      }
+    }
+    return cache;
+  }
+  
+  static void batch(CommandLine cmd, Properties prop) throws Exception {
+    if (prop.containsKey(PrettyPrint.INPUT) || prop.containsKey(PrettyPrint.URL) || prop.containsKey(PrettyPrint.OUTPUT)) {
+      throw new Exception("do not use -i, -u or -o with -b");
+    }
+    Batch batch = new Batch(prop, new File(cmd.getOptionValue("b")), getWorkers(cmd));
+    if (cmd.hasOption("l")) {
+      batch.addInputList(new File(cmd.getOptionValue("l")));
+    }
+    String[] inputs = cmd.getArgs();
+    for (int i=0; i<inputs.length; i++) {
+      batch.addInput(inputs[i]);
+    }
+    int failed = batch.execute();
+    for (Iterator iter = batch.getFailures().iterator(); iter.hasNext(); ) {
+      System.err.println(iter.next());
+    }
+    if (failed > 0) {
+      throw new Exception(failed+" of "+batch.size()+" files failed");
+    }
+  }
+  
+  static int getWorkers(CommandLine cmd) throws Exception {
+    int workers = Runtime.getRuntime().availableProcessors();
+    if (cmd.hasOption("w")) {
+      try {
+        workers = Integer.parseInt(cmd.getOptionValue("w"));
+      } catch (NumberFormatException e) {
+        workers = 0;
+      }
+      if (workers < 1) {
+        throw new Exception("-w must be an integer > 0");
+      }
+    }
+    return workers;
+  }
+  
+  static void serve(CommandLine cmd, Properties prop) throws Exception {
+    if (prop.containsKey(PrettyPrint.INPUT) || prop.containsKey(PrettyPrint.URL) || prop.containsKey(PrettyPrint.OUTPUT)) {
+      throw new Exception("do not use -i, -u or -o with -d");
+    }
+    int port;
+    try {
+      port = Integer.parseInt(cmd.getOptionValue("d"));
+    } catch (NumberFormatException e) {
+      port = -1;
+    }
+    if (port < 0 || port > 65535) {
+      throw new Exception("-d must be a port no between 0 and 65535");
+    }
+    Server server = new Server(prop, port, getWorkers(cmd));
+    server.start();
+    System.out.println("prettyxml serving on http://127.0.0.1:"+server.getPort()+"/format");
+    server.join();
   }
   
 }
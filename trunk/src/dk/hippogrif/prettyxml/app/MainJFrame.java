@@ -29,6 +29,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.event.DocumentEvent;
@@ -53,6 +54,8 @@ public class MainJFrame extends javax.swing.JFrame implements GParentInterface,
   private JFileChooser outputFileChooser = new JFileChooser();
   private HTMLDialog help;
   private String version;
+  /** The prettyprint running, cancelled by pressing execute again */
+  private Job job;
   
   /** Creates new form MainJFrame */
   public MainJFrame(String version) {
@@ -103,7 +106,7 @@ public class MainJFrame extends javax.swing.JFrame implements GParentInterface,
     return prop;
   }
   
-  private void message(String title, Exception e) {
+  private void message(String title, Throwable e) {
     logger.log(Level.FINE, title, e);
     JOptionPane.showMessageDialog(this, e.getMessage()+"\n["+e.getClass().getName()+"]", title, JOptionPane.ERROR_MESSAGE);
   }
@@ -430,13 +433,59 @@ public class MainJFrame extends javax.swing.JFrame implements GParentInterface,
   }//GEN-LAST:event_helpButtonActionPerformed
                         
   private void executeButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_executeButtonActionPerformed
-    try {
-      Properties prop = ui2prop();
-      PrettyPrint.execute(prop);
-      message("Execute", "done");
-    } catch (Exception e) {
-      message("Execute", e);
+    if (job != null) {
+      // pressed while running
+      job.cancel();
+      return;
     }
+    final Properties prop = ui2prop();
+    final Job current = new Job(new ProgressListener() {
+      private long shown;
+      
+      public void progress(Job j) {
+        long now = System.currentTimeMillis();
+        if (now - shown < 200) {
+          return;
+        }
+        shown = now;
+        final String title = "prettyxml "+version+" - "+j.getStage()+", "+j.getBytesRead()/1024+" KB read, "+j.getElementsWritten()+" elements written";
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            setTitle(title);
+          }
+        });
+      }
+    });
+    job = current;
+    executeButton.setToolTipText("cancel prettyprint");
+    Thread thread = new Thread("prettyxml-execute") {
+      public void run() {
+        Throwable error = null;
+        try {
+          PrettyPrint.execute(prop, current);
+        } catch (Throwable e) {
+          // also an error, e.g., out of memory, must end the job
+          error = e;
+        }
+        final Throwable e = error;
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            job = null;
+            setTitle("prettyxml "+version);
+            executeButton.setToolTipText("prettyprint");
+            if (e == null) {
+              message("Execute", "done");
+            } else if (current.isCancelled()) {
+              message("Execute", "cancelled");
+            } else {
+              message("Execute", e);
+            }
+          }
+        });
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
   }//GEN-LAST:event_executeButtonActionPerformed
   
   private void saveAsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveAsButtonActionPerformed
@@ -0,0 +1,720 @@
+/*
+    Copyright (C) 2005 Jesper Goertz
+    All Rights Reserved, http://hippogrif.dk/sw/prettyxml
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package dk.hippogrif.prettyxml.app;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dk.hippogrif.prettyxml.*;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Prettyprints documents posted over HTTP on localhost so a build can
+ * format many files without starting a JVM for each.<p>
+ * <code>POST /format</code> returns the posted document prettyprinted -
+ * the query may give <code>setting=name</code> of a wellknown setting
+ * replacing the options of the server and basic properties overriding them,
+ * e.g., <code>/format?setting=compact&amp;indent=4</code>, and
+ * <code>stream=true</code>. Only wellknown transformations and those of
+ * the server options may be used. The external DTD subset is not loaded
+ * and a document referring to an external entity is refused, so a client
+ * cannot make the server read local files or fetch urls.
+ * <code>GET /health</code> answers ok and <code>GET /metrics</code>
+ * gives counters as lines of name and value.<p>
+ * Connections are kept alive as in HTTP/1.1 and served by a fixed pool of
+ * worker threads, a connection holding its worker while kept alive.
+ * Connections waiting for a worker are queued up to a limit and beyond it
+ * rejected with 503. Requests must give their length which is limited.
+ * The output is returned as it is written, chunked when it exceeds a buffer.
+ * The printers of the server options, the wellknown settings and the
+ * queries seen are compiled once and shared by the workers.
+ */
+public class Server {
+
+  private static Logger logger = Logger.getLogger(Server.class.getName());
+
+  private static final int MAX_HEADER_SIZE = 8192;
+  private static final int RESPONSE_BUFFER_SIZE = 65536;
+  private static final int MAX_CACHED_QUERIES = 256;
+  private static final String WARM_UP = "<prettyxml><warm-up a=\"1\">up</warm-up></prettyxml>";
+
+  // posted documents may come from any local process or web page
+  private static final EntityResolver NO_EXTERNAL_ENTITIES = new EntityResolver() {
+    public InputSource resolveEntity(String publicId, String systemId) throws SAXException {
+      throw new SAXException("external entity not allowed "+systemId);
+    }
+  };
+
+  private Properties prop;
+  private int port;
+  private int workers;
+  private int queueSize;
+  private long maxRequestSize = 64L * 1024 * 1024;
+  private int idleTimeout = 15000;
+  private HashSet transforms = new HashSet();
+  private HashMap queries = new HashMap();
+
+  private ServerSocket serverSocket;
+  private Thread acceptor;
+  private Thread[] threads;
+  private LinkedList queue = new LinkedList();
+  private HashSet connections = new HashSet();
+  private boolean stopped;
+
+  private long requests;
+  private long failures;
+  private long rejected;
+  private long bytesIn;
+  private long bytesOut;
+  private long millis;
+
+  /**
+   * Create server.
+   *
+   * @param prop holds the format and options used unless a request gives a setting
+   * @param port on localhost, 0 for any free port
+   * @param workers no of worker threads
+   * @throws Exception if property error
+   */
+  public Server(Properties prop, int port, int workers) throws Exception {
+    this.prop = (Properties)prop.clone();
+    this.prop.remove(PrettyPrint.INPUT);
+    this.prop.remove(PrettyPrint.URL);
+    this.prop.remove(PrettyPrint.OUTPUT);
+    PrettyPrint.checkProperties(this.prop, true);
+    this.port = port;
+    this.workers = workers < 1 ? 1 : workers;
+    queueSize = 16 * this.workers;
+    transforms.addAll(Arrays.asList(PrettyPrint.getTransformations()));
+    addTransforms(this.prop);
+  }
+
+  private void addTransforms(Properties p) {
+    if (p.containsKey(PrettyPrint.TRANSFORM)) {
+      String[] sa = p.getProperty(PrettyPrint.TRANSFORM).split(";");
+      for (int i=0; i<sa.length; i++) {
+        transforms.add(sa[i].trim());
+      }
+    }
+  }
+
+  /**
+   * Set max no of bytes in a posted document - default 64 MB.
+   */
+  public void setMaxRequestSize(long size) {
+    maxRequestSize = size;
+  }
+
+  public long getMaxRequestSize() {
+    return maxRequestSize;
+  }
+
+  /**
+   * Set max no of connections waiting for a worker - default 16 per worker.
+   */
+  public void setQueueSize(int size) {
+    queueSize = size;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * Set milliseconds a connection may be idle before it is closed - default 15 s.
+   */
+  public void setIdleTimeout(int timeout) {
+    idleTimeout = timeout;
+  }
+
+  public int getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Get port listened on - the port given when created until started.
+   */
+  public int getPort() {
+    return serverSocket == null ? port : serverSocket.getLocalPort();
+  }
+
+  /**
+   * Listen on localhost and start the workers after prettyprinting
+   * a small document with the server options and each wellknown
+   * setting so classes are loaded and stylesheets compiled.
+   *
+   * @throws Exception if port cannot be bound or warm-up fails
+   */
+  public synchronized void start() throws Exception {
+    if (serverSocket != null) {
+      throw new IllegalStateException("server started");
+    }
+    warmUp(getPrinter(""));
+    String[] settings = PrettyPrint.getSettings();
+    for (int i=0; i<settings.length; i++) {
+      warmUp(getPrinter("setting="+settings[i]));
+    }
+    serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+    threads = new Thread[workers];
+    for (int i=0; i<workers; i++) {
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          Socket socket;
+          while ((socket = nextConnection()) != null) {
+            serve(socket);
+          }
+        }
+      }, "prettyxml-server-"+i);
+      threads[i].start();
+    }
+    acceptor = new Thread(new Runnable() {
+      public void run() {
+        accept();
+      }
+    }, "prettyxml-server-accept");
+    acceptor.start();
+    if (logger.isLoggable(Level.FINE)) {
+      logger.log(Level.FINE, "listening on port "+getPort());
+    }
+  }
+
+  private static void warmUp(PrettyPrinter printer) throws Exception {
+    printer.format(new ByteArrayInputStream(WARM_UP.getBytes("UTF-8")), new ByteArrayOutputStream());
+  }
+
+  /**
+   * Stop listening, close connections and wait for the threads to finish.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void stop() throws InterruptedException {
+    Thread[] all;
+    synchronized (this) {
+      if (serverSocket == null || stopped) {
+        return;
+      }
+      stopped = true;
+      close(serverSocket);
+      for (Iterator iter = queue.iterator(); iter.hasNext(); ) {
+        close((Socket)iter.next());
+      }
+      queue.clear();
+      for (Iterator iter = connections.iterator(); iter.hasNext(); ) {
+        close((Socket)iter.next());
+      }
+      notifyAll();
+      all = threads;
+    }
+    acceptor.join();
+    for (int i=0; i<all.length; i++) {
+      all[i].join();
+    }
+  }
+
+  /**
+   * Wait until the server is stopped.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void join() throws InterruptedException {
+    while (!stopped) {
+      wait();
+    }
+  }
+
+  private void accept() {
+    while (true) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        synchronized (this) {
+          if (stopped) {
+            return;
+          }
+        }
+        logger.log(Level.FINE, "accept", e);
+        continue;
+      }
+      boolean queued = false;
+      synchronized (this) {
+        if (!stopped && queue.size() < queueSize) {
+          queue.addLast(socket);
+          queued = true;
+          notify();
+        } else {
+          rejected++;
+        }
+      }
+      if (!queued) {
+        try {
+          OutputStream out = socket.getOutputStream();
+          sendText(out, "503 Service Unavailable", "server busy", false);
+        } catch (IOException e) {
+          logger.log(Level.FINE, "reject", e);
+        }
+        close(socket);
+      }
+    }
+  }
+
+  private synchronized Socket nextConnection() {
+    while (!stopped && queue.isEmpty()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        return null;
+      }
+    }
+    if (stopped) {
+      return null;
+    }
+    Socket socket = (Socket)queue.removeFirst();
+    connections.add(socket);
+    return socket;
+  }
+
+  /**
+   * Serve requests on a connection until it is closed, idle or in error.
+   */
+  private void serve(Socket socket) {
+    try {
+      socket.setSoTimeout(idleTimeout);
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+      while (handle(in, out)) {
+      }
+    } catch (SocketTimeoutException e) {
+      logger.log(Level.FINEST, "idle connection closed");
+    } catch (IOException e) {
+      logger.log(Level.FINE, "connection", e);
+    } finally {
+      synchronized (this) {
+        connections.remove(socket);
+      }
+      close(socket);
+    }
+  }
+
+  /**
+   * Handle a request.
+   *
+   * @return true if the connection is kept alive
+   */
+  private boolean handle(InputStream in, OutputStream out) throws IOException {
+    int[] budget = new int[]{MAX_HEADER_SIZE};
+    String line = readLine(in, budget);
+    if (line == null) {
+      return false;
+    }
+    String[] request = line.split(" ");
+    HashMap headers = new HashMap();
+    while ((line = readLine(in, budget)) != null && line.length() > 0) {
+      int colon = line.indexOf(':');
+      if (colon > 0) {
+        headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon+1).trim());
+      }
+    }
+    if (line == null || budget[0] < 0 || request.length != 3 || !request[2].startsWith("HTTP/1.")) {
+      sendText(out, "400 Bad Request", "bad request", false);
+      return false;
+    }
+    boolean http11 = !"HTTP/1.0".equals(request[2]);
+    String connection = (String)headers.get("connection");
+    boolean keepAlive = http11
+        ? !"close".equalsIgnoreCase(connection)
+        : "keep-alive".equalsIgnoreCase(connection);
+    String method = request[0];
+    String path = request[1];
+    String query = "";
+    int q = path.indexOf('?');
+    if (q >= 0) {
+      query = path.substring(q+1);
+      path = path.substring(0, q);
+    }
+    if ("/health".equals(path) || "/metrics".equals(path)) {
+      if (!"GET".equals(method)) {
+        sendText(out, "405 Method Not Allowed", "use GET", false);
+        return false;
+      }
+      sendText(out, "200 OK", "/health".equals(path) ? "ok" : getMetrics(), keepAlive);
+      return keepAlive;
+    } else if (!"/format".equals(path)) {
+      sendText(out, "404 Not Found", "not found", false);
+      return false;
+    } else if (!"POST".equals(method)) {
+      sendText(out, "405 Method Not Allowed", "use POST", false);
+      return false;
+    }
+    long length;
+    try {
+      length = Long.parseLong((String)headers.get("content-length"));
+    } catch (Exception e) {
+      sendText(out, "411 Length Required", "length required", false);
+      return false;
+    }
+    if (length < 0 || length > maxRequestSize || headers.containsKey("transfer-encoding")) {
+      sendText(out, "413 Request Entity Too Large", "max request size is "+maxRequestSize, false);
+      return false;
+    }
+    PrettyPrinter printer;
+    try {
+      printer = getPrinter(query);
+    } catch (Exception e) {
+      sendText(out, "400 Bad Request", e.getMessage(), false);
+      return false;
+    }
+    if ("100-continue".equalsIgnoreCase((String)headers.get("expect"))) {
+      out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes("ISO-8859-1"));
+      out.flush();
+    }
+    return format(printer, new BodyInputStream(in, length), out, http11, keepAlive);
+  }
+
+  /**
+   * Prettyprint the body and respond with the result or the error.
+   */
+  private boolean format(PrettyPrinter printer, BodyInputStream body, OutputStream out, boolean http11,
+      boolean keepAlive) throws IOException {
+    long start = System.currentTimeMillis();
+    String encoding = printer.getFormat().getEncoding();
+    Response response = new Response(out, "text/xml; charset="+encoding, http11, keepAlive);
+    try {
+      printer.format(body, response);
+    } catch (Exception e) {
+      logger.log(Level.FINE, "format", e);
+      count(body.count, response.count, start, true);
+      if (response.committed) {
+        // too late for an error status, the client sees a broken response
+        return false;
+      }
+      body.drain();
+      sendText(out, "400 Bad Request", String.valueOf(e.getMessage()), keepAlive);
+      return keepAlive;
+    }
+    body.drain();
+    response.finish();
+    count(body.count, response.count, start, false);
+    return response.keepAlive;
+  }
+
+  /**
+   * Get printer for a query - compiled once and cached.
+   *
+   * @throws Exception if setting, property or transformation is not allowed
+   */
+  private PrettyPrinter getPrinter(String query) throws Exception {
+    PrettyPrinter printer;
+    synchronized (queries) {
+      printer = (PrettyPrinter)queries.get(query);
+    }
+    if (printer == null) {
+      printer = new PrettyPrinter.Builder().setProperties(parseQuery(query))
+          .setEntityResolver(NO_EXTERNAL_ENTITIES).build();
+      synchronized (queries) {
+        if (queries.size() >= MAX_CACHED_QUERIES) {
+          queries.clear();
+        }
+        queries.put(query, printer);
+      }
+    }
+    return printer;
+  }
+
+  private Properties parseQuery(String query) throws Exception {
+    Properties p = prop;
+    Properties params = new Properties();
+    String[] sa = query.split("&");
+    for (int i=0; i<sa.length; i++) {
+      if (sa[i].length() == 0) {
+        continue;
+      }
+      int eq = sa[i].indexOf('=');
+      String name = URLDecoder.decode(eq < 0 ? sa[i] : sa[i].substring(0, eq), "UTF-8");
+      String value = eq < 0 ? "" : URLDecoder.decode(sa[i].substring(eq+1), "UTF-8");
+      if ("setting".equals(name)) {
+        p = PrettyPrint.getSetting(value);
+        if (p == null) {
+          throw new Exception("unknown setting "+value);
+        }
+      } else if (PrettyPrint.STREAM.equals(name)
+          || !PrettyPrint.LOAD_EXTERNAL_DTD.equals(name) && Arrays.asList(PrettyPrint.BASIC_KEYS).contains(name)) {
+        params.setProperty(name, value);
+      } else {
+        throw new Exception("unknown property "+name);
+      }
+    }
+    p = (Properties)p.clone();
+    p.putAll(params);
+    // the limits of the server are kept whatever the setting
+    for (int i=0; i<PrettyPrint.LIMIT_KEYS.length; i++) {
+      String key = PrettyPrint.LIMIT_KEYS[i];
+      if (prop.containsKey(key)) {
+        p.setProperty(key, prop.getProperty(key));
+      }
+    }
+    p.setProperty(PrettyPrint.LOAD_EXTERNAL_DTD, "false");
+    PrettyPrint.checkProperties(p, true);
+    if (p.containsKey(PrettyPrint.TRANSFORM)) {
+      sa = p.getProperty(PrettyPrint.TRANSFORM).split(";");
+      for (int i=0; i<sa.length; i++) {
+        if (!transforms.contains(sa[i].trim())) {
+          throw new Exception("transformation not allowed "+sa[i].trim());
+        }
+      }
+    }
+    return p;
+  }
+
+  private synchronized void count(long in, long out, long start, boolean failed) {
+    requests++;
+    if (failed) {
+      failures++;
+    }
+    bytesIn += in;
+    bytesOut += out;
+    millis += System.currentTimeMillis() - start;
+  }
+
+  /**
+   * Get counters as lines of name and value - formatting requests,
+   * failed requests, rejected connections, bytes posted, bytes returned,
+   * milliseconds formatting, connections served and waiting.
+   */
+  public synchronized String getMetrics() {
+    return "requests " + requests + "\n"
+        + "failures " + failures + "\n"
+        + "rejected " + rejected + "\n"
+        + "bytesIn " + bytesIn + "\n"
+        + "bytesOut " + bytesOut + "\n"
+        + "millis " + millis + "\n"
+        + "connections " + connections.size() + "\n"
+        + "queued " + queue.size() + "\n";
+  }
+
+  /**
+   * Read a header line in ISO-8859-1 without the line break.
+   *
+   * @param budget holds no of bytes left for the header, negative if exceeded
+   * @return null at end of stream or if the budget is exceeded
+   */
+  private static String readLine(InputStream in, int[] budget) throws IOException {
+    StringBuffer sb = new StringBuffer();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        return null;
+      }
+      if (--budget[0] < 0) {
+        return null;
+      }
+      if (c != '\r') {
+        sb.append((char)c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void sendText(OutputStream out, String status, String text, boolean keepAlive)
+      throws IOException {
+    byte[] body = (text+"\n").getBytes("UTF-8");
+    String head = "HTTP/1.1 " + status + "\r\n"
+        + "Content-Type: text/plain; charset=UTF-8\r\n"
+        + "Content-Length: " + body.length + "\r\n"
+        + (keepAlive ? "" : "Connection: close\r\n")
+        + "\r\n";
+    out.write(head.getBytes("ISO-8859-1"));
+    out.write(body);
+    out.flush();
+  }
+
+  private static void close(ServerSocket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+    }
+  }
+
+  private static void close(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+    }
+  }
+
+  /**
+   * The body of a request - reads no more than its length.
+   */
+  static class BodyInputStream extends InputStream {
+    private InputStream in;
+    private long remaining;
+    long count;
+
+    BodyInputStream(InputStream in, long length) {
+      this.in = in;
+      remaining = length;
+    }
+
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int c = in.read();
+      if (c < 0) {
+        throw new EOFException("request body truncated");
+      }
+      remaining--;
+      count++;
+      return c;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int n = in.read(b, off, (int)Math.min(len, remaining));
+      if (n < 0) {
+        throw new EOFException("request body truncated");
+      }
+      remaining -= n;
+      count += n;
+      return n;
+    }
+
+    public int available() throws IOException {
+      return (int)Math.min(in.available(), remaining);
+    }
+
+    /**
+     * The parser does not close the request.
+     */
+    public void close() {
+    }
+
+    /**
+     * Skip what is left so the next request can be read.
+     */
+    void drain() throws IOException {
+      byte[] b = new byte[8192];
+      while (read(b, 0, b.length) >= 0) {
+      }
+    }
+  }
+
+  /**
+   * The body of a successful response - buffered so a small result
+   * is sent with its length, and else sent chunked as it is written,
+   * or to the end of the connection for HTTP/1.0.
+   */
+  static class Response extends OutputStream {
+    private OutputStream out;
+    private String contentType;
+    private boolean http11;
+    boolean keepAlive;
+    boolean committed;
+    long count;
+    private byte[] buf = new byte[RESPONSE_BUFFER_SIZE];
+    private int size;
+
+    Response(OutputStream out, String contentType, boolean http11, boolean keepAlive) {
+      this.out = out;
+      this.contentType = contentType;
+      this.http11 = http11;
+      this.keepAlive = keepAlive;
+    }
+
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      count += len;
+      if (!committed) {
+        if (size + len <= buf.length) {
+          System.arraycopy(b, off, buf, size, len);
+          size += len;
+          return;
+        }
+        commit();
+      }
+      writeChunk(b, off, len);
+    }
+
+    /**
+     * Output is sent when the buffer is full or the response finished.
+     */
+    public void flush() {
+    }
+
+    private void commit() throws IOException {
+      committed = true;
+      if (!http11) {
+        keepAlive = false;
+      }
+      String head = "HTTP/1.1 200 OK\r\n"
+          + "Content-Type: " + contentType + "\r\n"
+          + (http11 ? "Transfer-Encoding: chunked\r\n" : "")
+          + (keepAlive ? "" : "Connection: close\r\n")
+          + "\r\n";
+      out.write(head.getBytes("ISO-8859-1"));
+      writeChunk(buf, 0, size);
+      buf = null;
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+      if (http11) {
+        out.write((Integer.toHexString(len)+"\r\n").getBytes("ISO-8859-1"));
+        out.write(b, off, len);
+        out.write('\r');
+        out.write('\n');
+      } else {
+        out.write(b, off, len);
+      }
+    }
+
+    /**
+     * Send what is left of the response.
+     */
+    void finish() throws IOException {
+      if (!committed) {
+        String head = "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: " + contentType + "\r\n"
+            + "Content-Length: " + size + "\r\n"
+            + (keepAlive ? (http11 ? "" : "Connection: keep-alive\r\n") : "Connection: close\r\n")
+            + "\r\n";
+        out.write(head.getBytes("ISO-8859-1"));
+        out.write(buf, 0, size);
+      } else if (http11) {
+        out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+      }
+      out.flush();
+    }
+  }
+
+}
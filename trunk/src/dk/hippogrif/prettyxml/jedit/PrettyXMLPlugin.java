@@ -19,6 +19,7 @@
 
 package dk.hippogrif.prettyxml.jedit;
 
+import dk.hippogrif.prettyxml.Job;
 import dk.hippogrif.prettyxml.PrettyPrint;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -66,7 +67,6 @@ public class PrettyXMLPlugin extends EditPlugin {
    */
   public static boolean prettyPrint(View view, boolean newBuffer, Properties prop) {
     boolean result = false;
-    PrettyXMLPlugin logid = new PrettyXMLPlugin();
     Buffer buffer = view.getBuffer();
     buffer.writeLock();
     try {
@@ -77,7 +77,13 @@ public class PrettyXMLPlugin extends EditPlugin {
       PrettyPrint.checkProperties(prop, false);
       String linesep = prop.getProperty(PrettyPrint.LINE_SEPARATOR);
       prop.setProperty(PrettyPrint.LINE_SEPARATOR, "\n");
-      s = PrettyPrint.execute(prop, s);
+      // the buffer is locked while printing, so a runaway print is stopped by a deadline
+      Job job = new Job();
+      int timeout = jEdit.getIntegerProperty("prettyxml.timeout", 0);
+      if (timeout > 0) {
+        job.setTimeout(timeout * 1000L);
+      }
+      s = PrettyPrint.execute(prop, s, job);
       if (newBuffer) {
         Mode mode = buffer.getMode();
         buffer.writeUnlock();
@@ -99,7 +105,8 @@ public class PrettyXMLPlugin extends EditPlugin {
       String s = e.getMessage();
       if (s == null) {
         s = e.getClass().getName() + "\nsee activity.log for stack trace";
-        Log.log(Log.ERROR, logid, getStackTrace(e));
+        // jEdit's log prints the stack trace when it writes the entry
+        Log.log(Log.ERROR, PrettyXMLPlugin.class, e);
       }
       GUIUtilities.error(view, "prettyprint-error", new Object[]{s});
     } finally {
@@ -0,0 +1,168 @@
+/*
+ * AsyncHandlerTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Tests of AsyncHandler.
+ */
+public class AsyncHandlerTest extends TestCase {
+
+  public AsyncHandlerTest(String testName) {
+    super(testName);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(AsyncHandlerTest.class);
+
+    return suite;
+  }
+
+  /**
+   * Handler keeping the messages published, blocking while held.
+   */
+  static class ListHandler extends Handler {
+    List messages = Collections.synchronizedList(new ArrayList());
+    boolean held;
+    boolean waiting;
+    boolean closed;
+
+    public void publish(LogRecord record) {
+      synchronized (this) {
+        while (held) {
+          waiting = true;
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+      messages.add(record.getMessage());
+    }
+
+    synchronized boolean isWaiting() {
+      return waiting;
+    }
+
+    synchronized void hold(boolean held) {
+      this.held = held;
+      notifyAll();
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * Test that records are published in order, long messages truncated
+   * and the target closed after the queue is published.
+   */
+  public void testPublish() {
+    System.out.println("testPublish");
+    try {
+      ListHandler target = new ListHandler();
+      AsyncHandler handler = new AsyncHandler(target, 100);
+      handler.setMaxMessageLength(10);
+      for (int i=0; i<50; i++) {
+        handler.publish(new LogRecord(Level.INFO, "m"+i));
+      }
+      char[] ca = new char[100];
+      Arrays.fill(ca, 'x');
+      LogRecord record = new LogRecord(Level.INFO, new String(ca));
+      handler.publish(record);
+      handler.flush();
+      assertEquals(51, target.messages.size());
+      for (int i=0; i<50; i++) {
+        assertEquals("m"+i, target.messages.get(i));
+      }
+      assertEquals("xxxxxxxxxx... (100 chars)", target.messages.get(50));
+      assertEquals(100, record.getMessage().length());
+      handler.setLevel(Level.WARNING);
+      handler.publish(new LogRecord(Level.INFO, "not loggable"));
+      handler.publish(new LogRecord(Level.SEVERE, "last"));
+      handler.close();
+      assertEquals(52, target.messages.size());
+      assertEquals("last", target.messages.get(51));
+      assertTrue(target.closed);
+      handler.publish(new LogRecord(Level.SEVERE, "closed"));
+      assertEquals(52, target.messages.size());
+      assertEquals(0, handler.getDropped());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that publishing does not wait for a blocked target but drops
+   * the oldest records when the buffer is full.
+   */
+  public void testDropped() {
+    System.out.println("testDropped");
+    try {
+      ListHandler target = new ListHandler();
+      target.hold(true);
+      AsyncHandler handler = new AsyncHandler(target, 10);
+      handler.publish(new LogRecord(Level.INFO, "first"));
+      // wait until the first record is taken by the blocked target
+      for (int i=0; i<500 && !target.isWaiting(); i++) {
+        Thread.sleep(10);
+      }
+      assertTrue(target.isWaiting());
+      for (int i=0; i<1000; i++) {
+        handler.publish(new LogRecord(Level.INFO, "r"+i));
+      }
+      assertEquals(990, handler.getDropped());
+      target.hold(false);
+      handler.flush();
+      assertEquals(11, target.messages.size());
+      assertEquals("first", target.messages.get(0));
+      for (int i=0; i<10; i++) {
+        assertEquals("r"+(990+i), target.messages.get(1+i));
+      }
+      handler.close();
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that the target is not made until a record is published.
+   */
+  public void testOpen() {
+    System.out.println("testOpen");
+    try {
+      final ListHandler target = new ListHandler();
+      final int[] opened = new int[1];
+      AsyncHandler handler = new AsyncHandler(4) {
+        protected Handler open() {
+          opened[0]++;
+          return target;
+        }
+      };
+      handler.flush();
+      assertEquals(0, opened[0]);
+      handler.publish(new LogRecord(Level.INFO, "a"));
+      handler.publish(new LogRecord(Level.INFO, "b"));
+      handler.close();
+      assertEquals(1, opened[0]);
+      assertEquals(Arrays.asList(new String[]{"a", "b"}), target.messages);
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
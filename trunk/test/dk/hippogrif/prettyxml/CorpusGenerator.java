@@ -0,0 +1,344 @@
+/*
+ * CorpusGenerator.java
+ * Synthetic documents for tests and benchmarks
+ */
+
+package dk.hippogrif.prettyxml;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes synthetic XML documents of any size directly to a stream.
+ * The document is a root element holding subtrees until the requested
+ * size is reached, each subtree having the configured depth and fan-out.
+ * The same seed and settings always give the same document.<p>
+ * Only ascii is written so the no of chars is the size in bytes.
+ * Elements and attributes use the declared namespace prefixes at random,
+ * text is words with escaped markup or base64 of random bytes, and
+ * comments, processing instructions and CDATA sections are mixed in
+ * with the given ratios.
+ * Nothing is kept per element, so million-sibling lists, 10000-deep
+ * nesting and 100 MB text nodes are written in bounded memory.
+ */
+public class CorpusGenerator {
+
+  private static final String[] WORDS = new String[]{
+    "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+    "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+    "magna", "aliqua", "<", ">", "&", "\"", "'"
+  };
+
+  private static final char[] BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  private long seed;
+  private long size = 1024;
+  private int depth = 3;
+  private int fanOut = 3;
+  private int attributes = 2;
+  private int namespaces;
+  private double textRatio = 1;
+  private double cdataRatio;
+  private int textLength = 20;
+  private long binaryLength;
+  private double commentRatio;
+  private double piRatio;
+  private boolean docType;
+
+  private Random random;
+  private Writer out;
+  private long written;
+
+  /**
+   * Create generator.
+   *
+   * @param seed for the random choices
+   */
+  public CorpusGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Set least size in bytes of the document - default 1024.
+   */
+  public CorpusGenerator setSize(long size) {
+    this.size = size;
+    return this;
+  }
+
+  /**
+   * Set depth of each subtree below the root, 1 for a flat list of siblings - default 3.
+   */
+  public CorpusGenerator setDepth(int depth) {
+    this.depth = depth < 1 ? 1 : depth;
+    return this;
+  }
+
+  /**
+   * Set no of children of each element within a subtree - default 3.
+   */
+  public CorpusGenerator setFanOut(int fanOut) {
+    this.fanOut = fanOut < 1 ? 1 : fanOut;
+    return this;
+  }
+
+  /**
+   * Set no of attributes of each element - default 2.
+   */
+  public CorpusGenerator setAttributes(int attributes) {
+    this.attributes = attributes;
+    return this;
+  }
+
+  /**
+   * Set no of namespaces declared on the root - default 0.
+   */
+  public CorpusGenerator setNamespaces(int namespaces) {
+    this.namespaces = namespaces;
+    return this;
+  }
+
+  /**
+   * Set fraction of elements with text before their children - default 1.
+   */
+  public CorpusGenerator setTextRatio(double textRatio) {
+    this.textRatio = textRatio;
+    return this;
+  }
+
+  /**
+   * Set fraction of text written as CDATA sections - default 0.
+   */
+  public CorpusGenerator setCDATARatio(double cdataRatio) {
+    this.cdataRatio = cdataRatio;
+    return this;
+  }
+
+  /**
+   * Set average length of text in chars - default 20.
+   */
+  public CorpusGenerator setTextLength(int textLength) {
+    this.textLength = textLength;
+    return this;
+  }
+
+  /**
+   * Set no of random bytes written as base64 text in each leaf
+   * instead of words - default 0.
+   */
+  public CorpusGenerator setBinaryLength(long binaryLength) {
+    this.binaryLength = binaryLength;
+    return this;
+  }
+
+  /**
+   * Set fraction of elements starting with a comment - default 0.
+   */
+  public CorpusGenerator setCommentRatio(double commentRatio) {
+    this.commentRatio = commentRatio;
+    return this;
+  }
+
+  /**
+   * Set fraction of elements starting with a processing instruction - default 0.
+   */
+  public CorpusGenerator setPIRatio(double piRatio) {
+    this.piRatio = piRatio;
+    return this;
+  }
+
+  /**
+   * Set whether to write a DOCTYPE with an internal subset - default false.
+   */
+  public CorpusGenerator setDocType(boolean docType) {
+    this.docType = docType;
+    return this;
+  }
+
+  /**
+   * Write document to file.
+   *
+   * @return no of bytes written
+   * @throws IOException if io error
+   */
+  public long generate(File file) throws IOException {
+    OutputStream os = new FileOutputStream(file);
+    try {
+      return generate(os);
+    } finally {
+      os.close();
+    }
+  }
+
+  /**
+   * Write document to stream encoded as UTF-8.
+   *
+   * @return no of bytes written
+   * @throws IOException if io error
+   */
+  public long generate(OutputStream os) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF8"), 65536);
+    long n = generate(writer);
+    writer.flush();
+    return n;
+  }
+
+  /**
+   * Write document as text.
+   *
+   * @return no of chars written
+   * @throws IOException if io error
+   */
+  public synchronized long generate(Writer writer) throws IOException {
+    random = new Random(seed);
+    out = writer;
+    written = 0;
+    write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    if (docType) {
+      write("<!DOCTYPE root [\n<!ELEMENT root ANY>\n<!ENTITY corpus \"generated &#38;amp; seeded\">\n]>\n");
+    }
+    misc();
+    write("<root");
+    for (int i=1; i<=namespaces; i++) {
+      write(" xmlns:ns"+i+"=\"urn:corpus:"+i+"\"");
+    }
+    write(" seed=\""+seed+"\">");
+    do {
+      subtree();
+    } while (written < size);
+    write("\n</root>\n");
+    misc();
+    out = null;
+    return written;
+  }
+
+  /**
+   * Write a subtree without recursion so any depth can be written.
+   */
+  private void subtree() throws IOException {
+    String[] names = new String[depth];
+    int[] remaining = new int[depth];
+    int level = 0;
+    names[0] = startElement(0);
+    remaining[0] = depth > 1 ? fanOut : 0;
+    while (level >= 0) {
+      if (remaining[level] > 0) {
+        remaining[level]--;
+        level++;
+        names[level] = startElement(level);
+        remaining[level] = level+1 < depth ? fanOut : 0;
+      } else {
+        if (level+1 == depth && binaryLength > 0) {
+          binary();
+        }
+        write("</"+names[level]+">");
+        level--;
+      }
+    }
+  }
+
+  private String startElement(int level) throws IOException {
+    write("\n");
+    misc();
+    String name = prefix() + "e" + level;
+    write("<"+name);
+    for (int i=0; i<attributes; i++) {
+      write(" "+prefix()+"a"+i+"=\""+escape(words(1+random.nextInt(3)))+"\"");
+    }
+    write(">");
+    if (random.nextDouble() < textRatio && (binaryLength == 0 || level+1 < depth)) {
+      text();
+    }
+    return name;
+  }
+
+  private String prefix() {
+    int ns = namespaces > 0 ? random.nextInt(namespaces+1) : 0;
+    return ns == 0 ? "" : "ns"+ns+":";
+  }
+
+  /**
+   * Write comment and processing instruction according to ratios.
+   */
+  private void misc() throws IOException {
+    if (random.nextDouble() < commentRatio) {
+      write("<!-- "+words(3)+" -->");
+    }
+    if (random.nextDouble() < piRatio) {
+      write("<?corpus "+words(2)+"?>");
+    }
+  }
+
+  private void text() throws IOException {
+    int length = textLength/2 + random.nextInt(textLength+1);
+    String s = words(1);
+    while (s.length() < length) {
+      s = s + " " + words(1);
+    }
+    if (random.nextDouble() < cdataRatio) {
+      write("<![CDATA["+s+"]]>");
+    } else if (docType && random.nextInt(10) == 0) {
+      write(escape(s)+"&corpus;");
+    } else {
+      write(escape(s));
+    }
+  }
+
+  /**
+   * Write base64 of random bytes in lines of 76 chars.
+   */
+  private void binary() throws IOException {
+    byte[] b = new byte[57];
+    char[] c = new char[77];
+    for (long n = binaryLength; n > 0; n -= 57) {
+      int len = (int)Math.min(57, n);
+      random.nextBytes(b);
+      int j = 0;
+      for (int i=0; i<len; i+=3) {
+        int v = (b[i] & 0xff) << 16;
+        if (i+1 < len) v |= (b[i+1] & 0xff) << 8;
+        if (i+2 < len) v |= b[i+2] & 0xff;
+        c[j++] = BASE64[(v >> 18) & 63];
+        c[j++] = BASE64[(v >> 12) & 63];
+        c[j++] = i+1 < len ? BASE64[(v >> 6) & 63] : '=';
+        c[j++] = i+2 < len ? BASE64[v & 63] : '=';
+      }
+      c[j++] = '\n';
+      out.write(c, 0, j);
+      written += j;
+    }
+  }
+
+  private String words(int n) {
+    StringBuffer sb = new StringBuffer();
+    for (int i=0; i<n; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sb.toString();
+  }
+
+  private static String escape(String s) {
+    StringBuffer sb = new StringBuffer(s.length() + 16);
+    for (int i=0; i<s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '<': sb.append("&lt;"); break;
+        case '>': sb.append("&gt;"); break;
+        case '&': sb.append("&amp;"); break;
+        case '"': sb.append("&quot;"); break;
+        default: sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private void write(String s) throws IOException {
+    out.write(s);
+    written += s.length();
+  }
+
+}
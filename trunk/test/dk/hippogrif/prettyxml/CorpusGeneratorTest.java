@@ -0,0 +1,160 @@
+/*
+ * CorpusGeneratorTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.*;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests of CorpusGenerator.
+ */
+public class CorpusGeneratorTest extends TestCase {
+
+  private String tmpdir;
+
+  public CorpusGeneratorTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.tmp";
+    tmpdir = System.getProperty(name);
+    if (tmpdir == null || !new File(tmpdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+tmpdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(CorpusGeneratorTest.class);
+
+    return suite;
+  }
+
+  /**
+   * Counts what is parsed.
+   */
+  static class Counter extends DefaultHandler {
+    int elements;
+    int level;
+    int maxLevel;
+    int maxChildren;
+    int[] children = new int[20000];
+    int maxAttributes;
+    int maxText;
+    int text;
+
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+      elements++;
+      children[level]++;
+      maxChildren = Math.max(maxChildren, children[level]);
+      level++;
+      children[level] = 0;
+      maxLevel = Math.max(maxLevel, level);
+      maxAttributes = Math.max(maxAttributes, atts.getLength());
+      text = 0;
+    }
+
+    public void endElement(String uri, String localName, String qName) {
+      level--;
+      text = 0;
+    }
+
+    public void characters(char[] ch, int start, int length) {
+      text += length;
+      maxText = Math.max(maxText, text);
+    }
+  }
+
+  private Counter parse(CorpusGenerator generator) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    generator.generate(baos);
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Counter counter = new Counter();
+    factory.newSAXParser().parse(new ByteArrayInputStream(baos.toByteArray()), counter);
+    return counter;
+  }
+
+  /**
+   * Test that a seed always gives the same document.
+   */
+  public void testDeterministic() {
+    System.out.println("testDeterministic");
+    try {
+      CorpusGenerator generator = new CorpusGenerator(42).setSize(20000)
+          .setNamespaces(3).setCDATARatio(0.3).setCommentRatio(0.2).setPIRatio(0.2).setDocType(true);
+      StringWriter sw1 = new StringWriter();
+      StringWriter sw2 = new StringWriter();
+      long n = generator.generate(sw1);
+      new CorpusGenerator(42).setSize(20000)
+          .setNamespaces(3).setCDATARatio(0.3).setCommentRatio(0.2).setPIRatio(0.2).setDocType(true)
+          .generate(sw2);
+      assertEquals(sw1.toString(), sw2.toString());
+      assertEquals(n, sw1.toString().length());
+      assertTrue(n >= 20000);
+      assertTrue(sw1.toString().indexOf("<![CDATA[") > 0);
+      assertTrue(sw1.toString().indexOf("<!--") > 0);
+      assertTrue(sw1.toString().indexOf("<?corpus") > 0);
+      assertTrue(sw1.toString().indexOf("&corpus;") > 0);
+      assertTrue(sw1.toString().indexOf("<ns3:") > 0);
+      generator.generate(sw1 = new StringWriter());
+      assertEquals(sw2.toString(), sw1.toString());
+      new CorpusGenerator(43).setSize(20000).generate(sw1 = new StringWriter());
+      assertFalse(sw2.toString().equals(sw1.toString()));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test the shape of the generated documents.
+   */
+  public void testShape() {
+    System.out.println("testShape");
+    try {
+      Counter c = parse(new CorpusGenerator(1).setSize(100000).setDepth(4).setFanOut(5).setAttributes(7));
+      assertEquals(5, c.maxLevel);
+      assertEquals(7, c.maxAttributes);
+      c = parse(new CorpusGenerator(1).setSize(1000000).setDepth(1).setAttributes(0).setTextLength(1));
+      assertEquals(2, c.maxLevel);
+      assertTrue(c.maxChildren > 50000);
+      c = parse(new CorpusGenerator(1).setSize(10).setDepth(10000).setFanOut(1).setAttributes(0).setTextRatio(0));
+      assertEquals(10001, c.maxLevel);
+      assertEquals(10000, c.elements - 1);
+      c = parse(new CorpusGenerator(1).setSize(10).setDepth(2).setFanOut(1).setBinaryLength(1000000));
+      assertTrue(c.maxText > 1000000 * 4 / 3);
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that generated documents are prettyprinted alike from a tree and streamed.
+   */
+  public void testPrettyPrint() {
+    System.out.println("testPrettyPrint");
+    try {
+      File file = new File(tmpdir+"/corpus.xml");
+      new CorpusGenerator(7).setSize(50000).setNamespaces(2).setCDATARatio(0.2)
+          .setCommentRatio(0.1).setPIRatio(0.1).setDocType(true).generate(file);
+      Properties prop = (Properties)PrettyPrint.getSetting("indented").clone();
+      prop.setProperty(PrettyPrint.INPUT, file.getPath());
+      prop.setProperty(PrettyPrint.OUTPUT, tmpdir+"/corpus1.xml");
+      PrettyPrint.execute((Properties)prop.clone());
+      prop.setProperty(PrettyPrint.OUTPUT, tmpdir+"/corpus2.xml");
+      prop.setProperty(PrettyPrint.STREAM, "true");
+      PrettyPrint.execute(prop);
+      assertTrue(org.apache.commons.io.FileUtils.contentEquals(new File(tmpdir+"/corpus1.xml"), new File(tmpdir+"/corpus2.xml")));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * ElementSorterTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.jdom.*;
+import org.jdom.input.*;
+import org.jdom.output.*;
+
+/**
+ * Tests of ElementSorter.
+ */
+public class ElementSorterTest extends TestCase {
+
+  static final String XML =
+      "<root xmlns=\"urn:a\" xmlns:b=\"urn:b\" z=\"1\" a=\"2\" B=\"3\">\n" +
+      "  <item y=\"1\">zeta</item>\n" +
+      "  <Item b:x=\"2\" y=\"3\">  some   text  </Item>\n" +
+      "  <item y=\"1\">alpha</item>\n" +
+      "  <b:item>x</b:item>\n" +
+      "  <mixed>text <i>in</i> between <!-- c --> <?p d?>tail<a/></mixed>\n" +
+      "  <item y=\"2\" a=\"1\">t</item>\n" +
+      "</root>\n";
+
+  private String testdir;
+
+  public ElementSorterTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.dir";
+    testdir = System.getProperty(name);
+    if (testdir == null || !new File(testdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+testdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(ElementSorterTest.class);
+
+    return suite;
+  }
+
+  private String output(Document doc) {
+    return new XMLOutputter(Format.getPrettyFormat()).outputString(doc.getRootElement());
+  }
+
+  private Document sortNative(Document doc) {
+    new ElementSorter(true, null).sort(doc);
+    return new ElementSorter(false, ElementSorter.ELEMENT_KEYS).sort(doc);
+  }
+
+  private Document sortXSLT(Document doc) throws Exception {
+    doc = PrettyPrint.getTransformation("sort-attributes").transform(doc);
+    return PrettyPrint.getTransformation("sort-elements").transform(doc);
+  }
+
+  /**
+   * Test that the native sort gives the same result as the built-in stylesheets.
+   */
+  public void testSameAsStylesheets() {
+    System.out.println("testSameAsStylesheets");
+    try {
+      SAXBuilder builder = new SAXBuilder();
+      Document[] docs = new Document[]{
+        builder.build(new StringReader(XML)),
+        builder.build(new File(testdir+"/in1.xml"))
+      };
+      for (int i=0; i<docs.length; i++) {
+        String expected = output(sortXSLT((Document)docs[i].clone()));
+        assertEquals(expected, output(sortNative(docs[i])));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that other content is placed before a single element as by the stylesheets.
+   */
+  public void testSingleElement() {
+    System.out.println("testSingleElement");
+    try {
+      String[] xml = new String[]{
+        "<r><a/><!--c--><?p d?></r>",
+        "<r>head<a>x</a>tail<!--c--></r>",
+        "<r><a/></r>",
+        "<r>text<!--c--></r>"
+      };
+      for (int i=0; i<xml.length; i++) {
+        Document doc = new SAXBuilder().build(new StringReader(xml[i]));
+        String expected = new XMLOutputter().outputString(sortXSLT((Document)doc.clone()).getRootElement());
+        assertEquals(expected, new XMLOutputter().outputString(sortNative(doc).getRootElement()));
+      }
+      assertEquals("<r><!--c--><?p d?><a /></r>", new XMLOutputter().outputString(
+          sortNative(new SAXBuilder().build(new StringReader(xml[0]))).getRootElement()));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that CDATA sections are kept while the stylesheets turn them into text.
+   */
+  public void testCDATA() {
+    System.out.println("testCDATA");
+    try {
+      Document doc = new SAXBuilder().build(new StringReader("<r><b><![CDATA[<x>]]></b><a/></r>"));
+      assertEquals("<r><a /><b>&lt;x&gt;</b></r>", new XMLOutputter().outputString(
+          sortXSLT((Document)doc.clone()).getRootElement()));
+      assertEquals("<r><a /><b><![CDATA[<x>]]></b></r>", new XMLOutputter().outputString(
+          sortNative(doc).getRootElement()));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that all attributes are used as keys and that the sort is stable.
+   */
+  public void testAttributes() {
+    System.out.println("testAttributes");
+    try {
+      Document doc = new SAXBuilder().build(new StringReader(
+          "<r><e a='1' b='1' c='1' d='1' e='1' f='1' g='2' n='1'/><e n='2'/>" +
+          "<e a='1' b='1' c='1' d='1' e='1' f='1' g='1' n='3'/><e n='4'/></r>"));
+      new ElementSorter(false, ElementSorter.ELEMENT_KEYS).sort(doc);
+      List children = doc.getRootElement().getChildren();
+      String[] expected = new String[]{"3", "1", "2", "4"};
+      for (int i=0; i<expected.length; i++) {
+        assertEquals(expected[i], ((Element)children.get(i)).getAttributeValue("n"));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test the text and attribute value rules.
+   */
+  public void testRules() {
+    System.out.println("testRules");
+    try {
+      String xml = "<r><e k='b'>2</e><f k='c'>1</f><e k='a'>3</e></r>";
+      Document doc = new SAXBuilder().build(new StringReader(xml));
+      new ElementSorter(false, ElementSorter.TEXT_KEYS).sort(doc);
+      assertEquals("<r><f k=\"c\">1</f><e k=\"b\">2</e><e k=\"a\">3</e></r>",
+          new XMLOutputter().outputString(doc.getRootElement()));
+      doc = new SAXBuilder().build(new StringReader(xml));
+      new ElementSorter(false, "@k").sort(doc);
+      assertEquals("<r><e k=\"a\">3</e><e k=\"b\">2</e><f k=\"c\">1</f></r>",
+          new XMLOutputter().outputString(doc.getRootElement()));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+    try {
+      new ElementSorter(false, "unknown");
+      fail("unknown rule");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * Test that sorting on several threads gives the same result.
+   */
+  public void testParallel() {
+    System.out.println("testParallel");
+    try {
+      Random random = new Random(4711);
+      Element root = new Element("root");
+      for (int i=0; i<5000; i++) {
+        Element e = new Element("e"+random.nextInt(10));
+        e.setAttribute("a", ""+random.nextInt(100));
+        e.setAttribute("n", ""+i);
+        e.setText(""+random.nextInt(1000));
+        root.addContent(e);
+      }
+      Document doc1 = new Document(root);
+      Document doc2 = (Document)doc1.clone();
+      new ElementSorter(false, "name;@a").sort(doc1);
+      ElementSorter sorter = new ElementSorter(false, "name;@a");
+      sorter.setParallelThreshold(100);
+      sorter.setThreads(3);
+      sorter.sort(doc2);
+      assertEquals(output(doc1), output(doc2));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
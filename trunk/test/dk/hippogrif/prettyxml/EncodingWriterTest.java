@@ -0,0 +1,101 @@
+/*
+ * EncodingWriterTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.jdom.output.*;
+
+/**
+ * Tests of EncodingWriter.
+ */
+public class EncodingWriterTest extends TestCase {
+
+  private static final String CHARS = "a<\n\u00e6\u00ff\u0100\u07ff\u0800\u20ac\uffff\ud83d\ude00";
+
+  public EncodingWriterTest(String testName) {
+    super(testName);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(EncodingWriterTest.class);
+
+    return suite;
+  }
+
+  /**
+   * Test that the bytes are the same as written by an OutputStreamWriter.
+   */
+  public void testSameAsOutputStreamWriter() {
+    System.out.println("testSameAsOutputStreamWriter");
+    try {
+      Random random = new Random(3);
+      String[] encodings = new String[]{"UTF-8", "ISO-8859-1"};
+      for (int i=0; i<200; i++) {
+        StringBuffer sb = new StringBuffer();
+        int n = random.nextInt(i < 100 ? 50 : 100000);
+        for (int j=0; j<n; j++) {
+          // surrogate pairs are mostly kept together
+          int k = random.nextInt(CHARS.length());
+          sb.append(CHARS.charAt(k));
+          if (k == CHARS.length()-2 && random.nextInt(10) > 0) {
+            sb.append(CHARS.charAt(k+1));
+          }
+        }
+        String s = sb.toString();
+        for (int e=0; e<encodings.length; e++) {
+          ByteArrayOutputStream expected = new ByteArrayOutputStream();
+          Writer w = new OutputStreamWriter(expected, encodings[e]);
+          w.write(s);
+          w.close();
+          ByteArrayOutputStream actual = new ByteArrayOutputStream();
+          w = EncodingWriter.makeWriter(actual, encodings[e]);
+          assertTrue(w instanceof EncodingWriter);
+          // written in chunks of all sizes
+          int off = 0;
+          while (off < s.length()) {
+            int len = Math.min(s.length() - off, random.nextInt(40000));
+            switch (random.nextInt(3)) {
+              case 0:
+                w.write(s, off, len);
+                break;
+              case 1:
+                w.write(s.substring(off, off + len).toCharArray());
+                break;
+              default:
+                for (int j=0; j<len; j++) {
+                  w.write(s.charAt(off + j));
+                }
+            }
+            off += len;
+          }
+          w.close();
+          assertTrue(encodings[e]+" "+i, Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that the escape strategies escape as JDOM's default strategy.
+   */
+  public void testEscapeStrategy() {
+    System.out.println("testEscapeStrategy");
+    String[] encodings = new String[]{"UTF-8", "ISO-8859-1", "US-ASCII", "windows-1252", "UTF-16"};
+    for (int i=0; i<encodings.length; i++) {
+      EscapeStrategy expected = Format.getRawFormat().setEncoding(encodings[i]).getEscapeStrategy();
+      EscapeStrategy actual = EncodingWriter.getEscapeStrategy(encodings[i]);
+      assertSame(actual, EncodingWriter.getEscapeStrategy(encodings[i]));
+      for (int ch=0; ch<0x10000; ch++) {
+        assertEquals(encodings[i]+" "+ch, expected.shouldEscape((char)ch), actual.shouldEscape((char)ch));
+      }
+    }
+  }
+
+}
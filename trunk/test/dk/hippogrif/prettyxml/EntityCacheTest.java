@@ -0,0 +1,159 @@
+/*
+ * EntityCacheTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests of EntityCache.
+ */
+public class EntityCacheTest extends TestCase implements PropertyNames {
+
+  private static final String DTD = "<!ENTITY x \"expanded\">";
+
+  private String tmpdir;
+
+  public EntityCacheTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.tmp";
+    tmpdir = System.getProperty(name);
+    if (tmpdir == null || !new File(tmpdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+tmpdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(EntityCacheTest.class);
+
+    return suite;
+  }
+
+  private static String doc(String publicId, String systemId) {
+    return "<!DOCTYPE a PUBLIC \""+publicId+"\" \""+systemId+"\"><a>&x;</a>";
+  }
+
+  private static String format(EntityCache cache, String input, boolean stream) throws Exception {
+    PrettyPrinter printer = new PrettyPrinter.Builder().setSetting("pretty")
+        .setProperty(STREAM, String.valueOf(stream)).setEntityResolver(cache).build();
+    StringWriter sw = new StringWriter();
+    printer.format(new StringReader(input), sw);
+    return sw.toString();
+  }
+
+  /**
+   * Test system, public, rewrite and suffix entries of a catalog and its next catalog.
+   */
+  public void testCatalog() {
+    System.out.println("testCatalog");
+    try {
+      File dir = new File(tmpdir, "catalog");
+      dir.mkdirs();
+      FileUtils.writeStringToFile(new File(dir, "x.dtd"), DTD, "UTF-8");
+      FileUtils.writeStringToFile(new File(dir, "catalog.xml"),
+          "<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">"+
+          "<system systemId=\"http://example.invalid/x.dtd\" uri=\"x.dtd\"/>"+
+          "<public publicId=\"-//TEST//X\" uri=\"x.dtd\"/>"+
+          "<nextCatalog catalog=\"next.xml\"/></catalog>", "UTF-8");
+      FileUtils.writeStringToFile(new File(dir, "next.xml"),
+          "<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">"+
+          "<group xml:base=\"sub/\"><rewriteSystem systemIdStartString=\"http://example.invalid/r/\" rewritePrefix=\"../\"/></group>"+
+          "<systemSuffix systemIdSuffix=\"/s/x.dtd\" uri=\"x.dtd\"/></catalog>", "UTF-8");
+      EntityCache cache = new EntityCache(null);
+      cache.setOffline(true);
+      cache.addCatalog(new File(dir, "catalog.xml"));
+      String[] systemIds = new String[]{
+        "http://example.invalid/x.dtd", "http://example.invalid/p.dtd",
+        "http://example.invalid/r/x.dtd", "http://example.invalid/t/s/x.dtd"};
+      for (int i=0; i<systemIds.length; i++) {
+        String input = doc("-//TEST//X", systemIds[i]);
+        assertTrue(format(cache, input, false).indexOf("<a>expanded</a>") > 0);
+        assertTrue(format(cache, input, true).indexOf("<a>expanded</a>") > 0);
+      }
+      assertEquals(8, cache.getCatalogHits());
+      assertEquals(0, cache.getHits());
+      assertEquals(0, cache.getMisses());
+      assertNull(cache.lookup("-//TEST//Y", "http://example.invalid/y.dtd"));
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that a fetched DTD is stored in and then read from the cache,
+   * also offline - a jar url stands in for a remote one.
+   */
+  public void testCache() {
+    System.out.println("testCache");
+    try {
+      File jar = new File(tmpdir, "dtd.jar");
+      ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar));
+      zos.putNextEntry(new ZipEntry("x.dtd"));
+      zos.write(DTD.getBytes("UTF-8"));
+      zos.close();
+      String systemId = "jar:"+jar.toURI()+"!/x.dtd";
+      File dir = new File(tmpdir, "entities");
+      FileUtils.deleteDirectory(dir);
+      EntityCache cache = new EntityCache(dir);
+      String input = doc("-//TEST//X", systemId);
+      assertTrue(format(cache, input, false).indexOf("<a>expanded</a>") > 0);
+      assertEquals(1, cache.getMisses());
+      assertTrue(new File(dir, EntityCache.cacheName(systemId)).isFile());
+      assertEquals(1, dir.list().length);
+      assertTrue(format(cache, input, true).indexOf("<a>expanded</a>") > 0);
+      assertEquals(1, cache.getHits());
+      jar.delete();
+      cache = new EntityCache(dir);
+      cache.setOffline(true);
+      assertTrue(format(cache, input, false).indexOf("<a>expanded</a>") > 0);
+      assertEquals(1, cache.getHits());
+      assertEquals(0, cache.getMisses());
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that offline an entity not in a catalog or the cache is an error.
+   */
+  public void testOffline() {
+    System.out.println("testOffline");
+    try {
+      EntityCache cache = new EntityCache(new File(tmpdir, "entities"));
+      cache.setOffline(true);
+      try {
+        format(cache, doc("-//TEST//Z", "http://example.invalid/z.dtd"), false);
+        fail("fetched offline");
+      } catch (Exception e) {
+        assertTrue(e.getMessage().indexOf("offline") >= 0);
+      }
+      assertEquals(0, cache.getMisses());
+      PrettyPrint.setEntityResolver(cache);
+      try {
+        Properties prop = PrettyPrint.getSetting("pretty");
+        PrettyPrint.execute(prop, doc("-//TEST//Z", "http://example.invalid/z.dtd"));
+        fail("fetched offline");
+      } catch (Exception e) {
+        assertTrue(e.getMessage().indexOf("offline") >= 0);
+      } finally {
+        PrettyPrint.setEntityResolver(null);
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.toString());
+    }
+  }
+
+}
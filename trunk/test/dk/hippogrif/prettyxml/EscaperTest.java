@@ -0,0 +1,104 @@
+/*
+ * EscaperTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.jdom.*;
+import org.jdom.output.*;
+
+/**
+ * Tests of Escaper.
+ */
+public class EscaperTest extends TestCase {
+
+  private static final String CHARS = " \t\r\n<>&\"'abc\u00e6\u00f8\u0101\u20ac";
+
+  public EscaperTest(String testName) {
+    super(testName);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(EscaperTest.class);
+
+    return suite;
+  }
+
+  private static String random(Random random) {
+    StringBuffer sb = new StringBuffer();
+    int n = random.nextInt(12);
+    for (int i=0; i<n; i++) {
+      sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+    }
+    return sb.toString();
+  }
+
+  private static Format[] formats() {
+    String[] encodings = new String[]{"UTF-8", "ISO-8859-1", "US-ASCII"};
+    Format.TextMode[] modes = new Format.TextMode[]{
+      Format.TextMode.PRESERVE, Format.TextMode.TRIM, Format.TextMode.NORMALIZE, Format.TextMode.TRIM_FULL_WHITE
+    };
+    Format[] formats = new Format[encodings.length * modes.length];
+    for (int i=0; i<encodings.length; i++) {
+      for (int j=0; j<modes.length; j++) {
+        Format format = Format.getRawFormat();
+        format.setEncoding(encodings[i]);
+        format.setTextMode(modes[j]);
+        format.setLineSeparator("\n");
+        formats[i * modes.length + j] = format;
+      }
+    }
+    return formats;
+  }
+
+  /**
+   * Test that text, CDATA and attribute values are written as by XMLOutputter.
+   */
+  public void testSameAsXMLOutputter() {
+    System.out.println("testSameAsXMLOutputter");
+    try {
+      Random random = new Random(17);
+      Format[] formats = formats();
+      for (int i=0; i<2000; i++) {
+        String s = random(random);
+        for (int j=0; j<formats.length; j++) {
+          XMLOutputter outp = new XMLOutputter(formats[j]);
+          StringWriter sw = new StringWriter();
+          Escaper.writeText(sw, s, formats[j], true);
+          assertEquals(outp.outputString(new Text(s)), sw.toString());
+          sw = new StringWriter();
+          Escaper.writeText(sw, s, formats[j], false);
+          assertEquals(outp.outputString(new Text(s)), outp.escapeElementEntities(sw.toString()));
+          sw = new StringWriter();
+          Escaper.writeCDATA(sw, s, formats[j]);
+          assertEquals(outp.outputString(new CDATA(s)), sw.toString());
+          sw = new StringWriter();
+          Escaper.writeAttribute(sw, s, formats[j]);
+          assertEquals(outp.escapeAttributeEntities(s), sw.toString());
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that values without entities are written unchanged.
+   */
+  public void testUnchanged() {
+    System.out.println("testUnchanged");
+    try {
+      StringWriter sw = new StringWriter();
+      Escaper.writeAttribute(sw, "plain value", Format.getRawFormat());
+      Escaper.writeText(sw, " plain text ", Format.getRawFormat(), true);
+      assertEquals("plain value plain text ", sw.toString());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
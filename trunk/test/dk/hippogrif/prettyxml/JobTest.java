@@ -0,0 +1,200 @@
+/*
+ * JobTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+import org.jdom.Document;
+import org.jdom.filter.ElementFilter;
+import org.jdom.input.SAXBuilder;
+
+/**
+ * Tests of Job.
+ */
+public class JobTest extends TestCase implements PropertyNames {
+
+  private String tmpdir;
+
+  public JobTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.tmp";
+    tmpdir = System.getProperty(name);
+    if (tmpdir == null || !new File(tmpdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+tmpdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(JobTest.class);
+
+    return suite;
+  }
+
+  private static String corpus() throws Exception {
+    StringWriter sw = new StringWriter();
+    new CorpusGenerator(7).setSize(100000).setNamespaces(2).setCommentRatio(0.1).generate(sw);
+    return sw.toString();
+  }
+
+  /**
+   * Listener keeping the stages reported.
+   */
+  static class StageListener implements ProgressListener {
+    List stages = new ArrayList();
+    int calls;
+
+    public void progress(Job job) {
+      calls++;
+      if (stages.isEmpty() || !job.getStage().equals(stages.get(stages.size()-1))) {
+        stages.add(job.getStage());
+      }
+    }
+  }
+
+  /**
+   * Test stages and counts reported when building and streaming.
+   */
+  public void testProgress() {
+    System.out.println("testProgress");
+    try {
+      String input = corpus();
+      Document doc = new SAXBuilder().build(new StringReader(input));
+      int elements = 0;
+      for (Iterator iter = doc.getDescendants(new ElementFilter()); iter.hasNext(); iter.next()) {
+        elements++;
+      }
+      Properties prop = PrettyPrint.getSetting("pretty");
+      String expected = PrettyPrint.execute(prop, input);
+      StageListener listener = new StageListener();
+      Job job = new Job(listener);
+      assertEquals(expected, PrettyPrint.execute(prop, input, job));
+      assertEquals(Arrays.asList(new String[]{Job.PARSE, Job.OUTPUT, Job.DONE}), listener.stages);
+      assertTrue(listener.calls > 3);
+      assertEquals(input.length(), job.getBytesRead());
+      assertEquals(elements, job.getElementsWritten());
+      listener = new StageListener();
+      job.setListener(listener);
+      PrettyPrinter printer = new PrettyPrinter.Builder().setSetting("pretty")
+          .setProperty(STREAM, "true").setProperty(TRANSFORM, "sort-attributes").build();
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] bytes = input.getBytes("UTF-8");
+      printer.format(new ByteArrayInputStream(bytes), baos, job);
+      assertEquals(Arrays.asList(new String[]{Job.STREAM, Job.DONE}), listener.stages);
+      assertEquals(bytes.length, job.getBytesRead());
+      assertEquals(elements, job.getElementsWritten());
+      listener = new StageListener();
+      job.setListener(listener);
+      printer = new PrettyPrinter.Builder().setSetting("pretty").setProperty(TRANSFORM, "sort-elements").build();
+      printer.format(new StringReader(input), new StringWriter(), job);
+      assertEquals(Arrays.asList(new String[]{Job.PARSE, Job.TRANSFORM, Job.OUTPUT, Job.DONE}), listener.stages);
+      File file = new File(tmpdir, "job.xml");
+      FileUtils.writeStringToFile(file, input, "UTF-8");
+      prop = (Properties)prop.clone();
+      prop.setProperty(INPUT, file.getPath());
+      prop.setProperty(OUTPUT, new File(tmpdir, "job.out.xml").getPath());
+      job = new Job();
+      PrettyPrint.execute(prop, job);
+      assertEquals(file.length(), job.getBytesRead());
+      assertEquals(Job.DONE, job.getStage());
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that a job cancelled by its listener or past its deadline stops.
+   */
+  public void testCancel() {
+    System.out.println("testCancel");
+    try {
+      String input = corpus();
+      final String[] stages = new String[]{Job.PARSE, Job.OUTPUT, Job.STREAM};
+      for (int i=0; i<stages.length; i++) {
+        final String stage = stages[i];
+        Job job = new Job(new ProgressListener() {
+          public void progress(Job job) {
+            if (stage.equals(job.getStage()) && job.getBytesRead() > 0) {
+              job.cancel();
+            }
+          }
+        });
+        Properties prop = (Properties)PrettyPrint.getSetting("pretty").clone();
+        prop.setProperty(STREAM, String.valueOf(Job.STREAM.equals(stage)));
+        try {
+          PrettyPrint.execute(prop, input, job);
+          fail("not cancelled in "+stage);
+        } catch (InterruptedIOException e) {
+          assertEquals("cancelled", e.getMessage());
+        }
+        assertEquals(stage, job.getStage());
+        assertTrue(job.isCancelled());
+      }
+      Job job = new Job();
+      job.setDeadline(1);
+      assertTrue(job.isExpired());
+      try {
+        new PrettyPrinter.Builder().build().format(new StringReader(input), new StringWriter(), job);
+        fail("past deadline");
+      } catch (InterruptedIOException e) {
+        assertEquals("deadline exceeded", e.getMessage());
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that a stylesheet producing output endlessly is stopped by the deadline.
+   */
+  public void testRunawayTransform() {
+    System.out.println("testRunawayTransform");
+    try {
+      File xslt = new File(tmpdir, "runaway.xslt");
+      FileUtils.writeStringToFile(xslt,
+          "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"+
+          "<xsl:template match=\"/\"><r><xsl:for-each select=\"//node()\"><xsl:for-each select=\"//node()\">"+
+          "<xsl:for-each select=\"//node()\"><xsl:for-each select=\"//node()\"><e/>"+
+          "</xsl:for-each></xsl:for-each></xsl:for-each></xsl:for-each></r></xsl:template></xsl:stylesheet>", "UTF-8");
+      StringBuffer sb = new StringBuffer("<a>");
+      for (int i=0; i<200; i++) {
+        sb.append("<b/>");
+      }
+      sb.append("</a>");
+      for (int k=0; k<2; k++) {
+        PrettyPrinter printer = new PrettyPrinter.Builder().setProperty(TRANSFORM, xslt.getPath())
+            .setProperty(STREAM, String.valueOf(k == 1)).build();
+        Job job = new Job();
+        job.setTimeout(500);
+        long start = System.currentTimeMillis();
+        try {
+          printer.format(new StringReader(sb.toString()), new Writer() {
+            public void write(char[] cbuf, int off, int len) {
+            }
+            public void flush() {
+            }
+            public void close() {
+            }
+          }, job);
+          fail("not stopped");
+        } catch (InterruptedIOException e) {
+          assertEquals("deadline exceeded", e.getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - start < 30000);
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.toString());
+    }
+  }
+
+}
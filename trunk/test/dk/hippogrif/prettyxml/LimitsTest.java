@@ -0,0 +1,143 @@
+/*
+ * LimitsTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests of Limits.
+ */
+public class LimitsTest extends TestCase implements PropertyNames {
+
+  private String tmpdir;
+
+  public LimitsTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.tmp";
+    tmpdir = System.getProperty(name);
+    if (tmpdir == null || !new File(tmpdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+tmpdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(LimitsTest.class);
+
+    return suite;
+  }
+
+  private static void assertLimit(String key, String value, String input) {
+    String[] transforms = new String[]{null, "sort-attributes"};
+    for (int k=0; k<2; k++) {
+      for (int t=0; t<transforms.length; t++) {
+        Properties prop = (Properties)PrettyPrint.getSetting("pretty").clone();
+        prop.setProperty(STREAM, String.valueOf(k == 1));
+        if (transforms[t] != null) {
+          prop.setProperty(TRANSFORM, transforms[t]);
+        }
+        prop.setProperty(key, value);
+        try {
+          PrettyPrint.execute(prop, input);
+          fail(key+" not enforced stream="+(k == 1)+" transform="+transforms[t]);
+        } catch (Exception e) {
+          String message = e.getMessage();
+          // the parser counts entity expansions itself and reports them first
+          assertTrue(message, message.indexOf(key+" of "+value+" exceeded") >= 0
+              || key == MAX_ENTITY_EXPANSIONS && message.indexOf("\""+value+"\" entity expansions") >= 0);
+        }
+        prop.setProperty(key, String.valueOf(Long.parseLong(value)+1));
+        try {
+          PrettyPrint.execute(prop, input);
+        } catch (Exception e) {
+          fail(e.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Test that each limit fails a document exceeding it and not one at it.
+   */
+  public void testLimits() {
+    System.out.println("testLimits");
+    assertLimit(MAX_DEPTH, "3", "<a><b><c><d/></c></b></a>");
+    assertLimit(MAX_ATTRIBUTES, "2", "<a x=\"1\"><b x=\"1\" y=\"2\" z=\"3\"/></a>");
+    assertLimit(MAX_TEXT_LENGTH, "9", "<a><b>0123456789</b></a>");
+    assertLimit(MAX_TEXT_LENGTH, "9", "<a><b x=\"0123456789\"/></a>");
+    assertLimit(MAX_TEXT_LENGTH, "9", "<a><b>01234<![CDATA[56789]]></b></a>");
+    assertLimit(MAX_ENTITY_EXPANSIONS, "11",
+        "<!DOCTYPE a [<!ENTITY e \"x\"><!ENTITY f \"&e;&e;&e;&e;&e;\">]><a>&f;&f;</a>");
+    assertLimit(MAX_ENTITY_EXPANSIONS, "11",
+        "<!DOCTYPE a [<!ENTITY e \"x\"><!ENTITY f \"&e;&e;&e;&e;&e;\">]><a x=\"&f;&f;\"/>");
+    String input = "<a><b>0123456789</b></a>";
+    assertLimit(MAX_INPUT_BYTES, String.valueOf(input.length()-1), input);
+  }
+
+  /**
+   * Test the input limit on files read by the parser and memory mapped.
+   */
+  public void testInputFile() {
+    System.out.println("testInputFile");
+    long threshold = PrettyPrint.getMappedInputThreshold();
+    try {
+      File file = new File(tmpdir, "limits.xml");
+      FileUtils.writeStringToFile(file, "<a><b>0123456789</b></a>", "UTF-8");
+      for (int k=0; k<2; k++) {
+        PrettyPrint.setMappedInputThreshold(k == 0 ? threshold : 1);
+        Properties prop = (Properties)PrettyPrint.getSetting("pretty").clone();
+        prop.setProperty(INPUT, file.getPath());
+        prop.setProperty(OUTPUT, new File(tmpdir, "limits.out.xml").getPath());
+        prop.setProperty(MAX_INPUT_BYTES, String.valueOf(file.length()));
+        PrettyPrint.execute(prop);
+        prop.setProperty(MAX_INPUT_BYTES, String.valueOf(file.length()-1));
+        try {
+          PrettyPrint.execute(prop);
+          fail("input not limited");
+        } catch (IOException e) {
+          assertEquals(MAX_INPUT_BYTES+" of "+(file.length()-1)+" exceeded", e.getMessage());
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    } finally {
+      PrettyPrint.setMappedInputThreshold(threshold);
+    }
+  }
+
+  /**
+   * Test that limits must be positive integers.
+   */
+  public void testCheck() {
+    System.out.println("testCheck");
+    String[] values = new String[]{"0", "-1", "x", ""};
+    for (int i=0; i<values.length; i++) {
+      Properties prop = new Properties();
+      prop.setProperty(MAX_DEPTH, values[i]);
+      try {
+        PrettyPrint.checkProperties(prop, false);
+        fail("accepted "+values[i]);
+      } catch (Exception e) {
+        assertTrue(e.getMessage().startsWith(MAX_DEPTH));
+      }
+    }
+    try {
+      Properties prop = new Properties();
+      prop.setProperty(MAX_DEPTH, " 10 ");
+      PrettyPrint.checkProperties(prop, false);
+      assertEquals("10", prop.getProperty(MAX_DEPTH));
+      assertNull(Limits.get(new Properties()));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * MappedInputStreamTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests of MappedInputStream.
+ */
+public class MappedInputStreamTest extends TestCase {
+
+  private String testdir, tmpdir;
+
+  public MappedInputStreamTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    testdir = System.getProperty("dk.hippogrif.prettyxml.app.MainTest.dir");
+    tmpdir = System.getProperty("dk.hippogrif.prettyxml.app.MainTest.tmp");
+    if (tmpdir == null || !new File(tmpdir).isDirectory()) {
+      throw new Exception("cannot find dir dk.hippogrif.prettyxml.app.MainTest.tmp="+tmpdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(MappedInputStreamTest.class);
+
+    return suite;
+  }
+
+  /**
+   * Test reading a file spanning several regions.
+   */
+  public void testRegions() {
+    System.out.println("testRegions");
+    try {
+      byte[] bytes = new byte[100000];
+      new Random(5).nextBytes(bytes);
+      File file = new File(tmpdir+"/mapped.bin");
+      OutputStream os = new FileOutputStream(file);
+      os.write(bytes);
+      os.close();
+      Random random = new Random(6);
+      long[] regions = new long[]{1, 7, 4096, 99999, 100000, MappedInputStream.REGION};
+      for (int i=0; i<regions.length; i++) {
+        InputStream is = new MappedInputStream(file, regions[i]);
+        assertEquals(bytes.length, is.available());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int n = 0;
+        while (true) {
+          int c = random.nextInt(3);
+          if (c == 0) {
+            int b = is.read();
+            if (b < 0) break;
+            baos.write(b);
+            n++;
+          } else if (c == 1) {
+            byte[] b = new byte[random.nextInt(10000)+1];
+            int len = is.read(b, 0, b.length);
+            if (len < 0) break;
+            baos.write(b, 0, len);
+            n += len;
+          } else {
+            long skipped = is.skip(random.nextInt(100));
+            baos.write(bytes, n, (int)skipped);
+            n += skipped;
+          }
+        }
+        assertEquals(-1, is.read());
+        is.close();
+        assertTrue("region "+regions[i], Arrays.equals(bytes, baos.toByteArray()));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test prettyprinting mapped input as read by the parser.
+   */
+  public void testPrettyPrint() {
+    System.out.println("testPrettyPrint");
+    long threshold = PrettyPrint.getMappedInputThreshold();
+    try {
+      Properties prop = PrettyPrint.getSetting("indented");
+      prop.setProperty(PrettyPrint.INPUT, testdir+"/in1.xml");
+      String[] streams = new String[]{"false", "true"};
+      for (int i=0; i<streams.length; i++) {
+        prop.setProperty(PrettyPrint.STREAM, streams[i]);
+        prop.setProperty(PrettyPrint.OUTPUT, tmpdir+"/mapped1.xml");
+        PrettyPrint.setMappedInputThreshold(Long.MAX_VALUE);
+        PrettyPrint.execute((Properties)prop.clone());
+        prop.setProperty(PrettyPrint.OUTPUT, tmpdir+"/mapped2.xml");
+        PrettyPrint.setMappedInputThreshold(0);
+        PrettyPrint.execute((Properties)prop.clone());
+        assertTrue(FileUtils.contentEquals(new File(tmpdir+"/mapped1.xml"), new File(tmpdir+"/mapped2.xml")));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    } finally {
+      PrettyPrint.setMappedInputThreshold(threshold);
+    }
+  }
+
+}
@@ -14,6 +14,7 @@ import java.util.*;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.jdom.*;
 import org.jdom.input.*;
@@ -77,6 +78,18 @@ public class PrettyPrintTest extends TestCase {
       PrettyPrint pp = new PrettyPrint();
       pp.loadConfiguration("prettyxml.properties");
       assertNotNull(pp.getVersion());
+      assertNull(PrettyPrint.getSetting("unknown"));
+      assertNull(PrettyPrint.getTransformation("unknown"));
+      String[] settings = PrettyPrint.getSettings();
+      for (int i=0; i<settings.length; i++) {
+        assertEquals(PrettyPrint.getSetting(settings[i]), PrettyPrint.getSetting(settings[i]));
+        assertNotSame(PrettyPrint.getSetting(settings[i]), PrettyPrint.getSetting(settings[i]));
+      }
+      assertEquals(PrettyPrint.getDefaultSetting(), PrettyPrint.getSetting(settings[0]));
+      String[] transformations = PrettyPrint.getTransformations();
+      for (int i=0; i<transformations.length; i++) {
+        assertSame(PrettyPrint.getTransformation(transformations[i]), PrettyPrint.mkTransformer(transformations[i]));
+      }
     } catch (Exception e) {
       fail(e.toString());
     }
@@ -183,12 +196,19 @@ public class PrettyPrintTest extends TestCase {
       prop.setProperty("textMode","x");
       prop.setProperty("indentAttributes","False");
       prop.setProperty("sortAttributes","TRUE");
+      prop.setProperty("loadExternalDTD","FALSE");
       prop.setProperty("transform","x");
       prop.setProperty("input","x");
       prop.setProperty("output","x");
+      prop.setProperty("stream","false");
+      prop.setProperty("maxInputBytes","1000");
+      prop.setProperty("maxDepth","10");
+      prop.setProperty("maxAttributes","10");
+      prop.setProperty("maxTextLength","100");
+      prop.setProperty("maxEntityExpansions","10");
       assertTrue(PrettyPrint.keys.size()-1 == prop.size());
       PrettyPrint.checkProperties(prop, true);
-      assertTrue(12 == prop.size());
+      assertTrue(19 == prop.size());
     } catch (Exception e) {
       fail(e.toString());
     }
@@ -230,6 +250,14 @@ public class PrettyPrintTest extends TestCase {
       PrettyPrint.checkProperties(prop, true);
       fail("input and url");
     } catch (Exception e) {}
+    try {
+      prop.clear();
+      prop.setProperty("stream","true");
+      prop.setProperty("transform","sort-elements");
+      PrettyPrint.checkProperties(prop, true);
+    } catch (Exception e) {
+      fail("stream and transform");
+    }
     try {
       prop.clear();
       prop.setProperty("omitEncoding","y");
@@ -311,4 +339,174 @@ public class PrettyPrintTest extends TestCase {
     System.out.println("tested by MainTest.testGo");
   }
   
+  /**
+   * Test that the text variants of execute give the output of the stream variant.
+   */
+  public void testExecuteText() {
+    System.out.println("testExecuteText");
+    try {
+      StringWriter sw = new StringWriter();
+      new CorpusGenerator(4).setSize(20000).setNamespaces(1).setCDATARatio(0.1).generate(sw);
+      String input = sw.toString();
+      String[] settings = PrettyPrint.getSettings();
+      for (int i=0; i<settings.length; i++) {
+        for (int k=0; k<2; k++) {
+          Properties prop = PrettyPrint.getSetting(settings[i]);
+          prop.setProperty(PrettyPrint.STREAM, k == 0 ? "false" : "true");
+          String encoding = prop.getProperty(PrettyPrint.ENCODING, "UTF-8");
+          ByteArrayOutputStream baos = new ByteArrayOutputStream();
+          PrettyPrint.execute(prop, new ByteArrayInputStream(input.getBytes("UTF-8")), baos);
+          String expected = baos.toString(encoding);
+          assertEquals(expected, PrettyPrint.execute(prop, input));
+          sw = new StringWriter();
+          PrettyPrint.execute(prop, new StringReader(input), sw);
+          assertEquals(expected, sw.toString());
+          sw = new StringWriter();
+          PrettyPrint.execute(prop, new StringBuffer(input), sw);
+          assertEquals(expected, sw.toString());
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+  
+  /**
+   * Test of execute method by many threads sharing properties.
+   */
+  public void testConcurrentExecute() {
+    System.out.println("testConcurrentExecute");
+    try {
+      StringWriter sw = new StringWriter();
+      new CorpusGenerator(3).setSize(30000).setNamespaces(2).setCommentRatio(0.1).generate(sw);
+      final String input = sw.toString();
+      final Properties[] props = new Properties[4];
+      final String[] expected = new String[props.length];
+      for (int i=0; i<props.length; i++) {
+        props[i] = PrettyPrint.getSetting(i % 2 == 0 ? "pretty" : "indented");
+        props[i].setProperty(PrettyPrint.TRANSFORM, i < 2 ? "sort-elements" : "sort-attributes;"+testdir+"/sort-elements.xslt");
+        if (i % 2 == 1) {
+          props[i].setProperty(PrettyPrint.STREAM, "true");
+        }
+        Properties copy = (Properties)props[i].clone();
+        expected[i] = PrettyPrint.execute(props[i], input);
+        assertEquals(copy, props[i]);
+      }
+      final XSLTransformer transformer = PrettyPrint.mkTransformer("sort-elements");
+      final Document doc = new SAXBuilder().build(new StringReader(input));
+      final String sorted = new XMLOutputter().outputString(transformer.transform((Document)doc.clone()));
+      final ArrayList failures = new ArrayList();
+      Thread[] threads = new Thread[8];
+      for (int i=0; i<threads.length; i++) {
+        final int n = i;
+        threads[i] = new Thread() {
+          public void run() {
+            try {
+              for (int j=0; j<10; j++) {
+                int k = (n + j) % props.length;
+                if (!expected[k].equals(PrettyPrint.execute(props[k], input))) {
+                  throw new Exception("different output of "+props[k]);
+                }
+                Document d = transformer.transform((Document)doc.clone());
+                if (!sorted.equals(new XMLOutputter().outputString(d))) {
+                  throw new Exception("different output of shared transformer");
+                }
+              }
+            } catch (Exception e) {
+              synchronized (failures) {
+                failures.add(e.toString());
+              }
+            }
+          }
+        };
+        threads[i].start();
+      }
+      for (int i=0; i<threads.length; i++) {
+        threads[i].join();
+      }
+      assertEquals(Collections.EMPTY_LIST, failures);
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+  
+  /**
+   * Test output files written through a channel with and without preallocation.
+   */
+  public void testOutputFile() {
+    System.out.println("testOutputFile");
+    boolean preallocate = PrettyPrint.getPreallocateOutput();
+    int size = PrettyPrint.getOutputBufferSize();
+    try {
+      Properties prop = PrettyPrint.getSetting("pretty");
+      prop.setProperty(PrettyPrint.INPUT, testdir+"/in1.xml");
+      String expected = PrettyPrint.execute((Properties)prop.clone(), FileUtils.readFileToString(new File(testdir+"/in1.xml"), "UTF-8"));
+      File file = new File(tmpdir+"/out-channel.xml");
+      String[] streams = new String[]{"false", "true"};
+      for (int i=0; i<streams.length; i++) {
+        prop.setProperty(PrettyPrint.STREAM, streams[i]);
+        prop.setProperty(PrettyPrint.OUTPUT, file.getPath());
+        // an existing larger file is truncated
+        FileUtils.writeStringToFile(file, expected+expected, "UTF-8");
+        PrettyPrint.setPreallocateOutput(true);
+        PrettyPrint.setOutputBufferSize(100);
+        PrettyPrint.execute((Properties)prop.clone());
+        assertEquals(expected, FileUtils.readFileToString(file, "UTF-8"));
+        PrettyPrint.setPreallocateOutput(false);
+        PrettyPrint.setOutputBufferSize(size);
+        PrettyPrint.execute((Properties)prop.clone());
+        assertEquals(expected, FileUtils.readFileToString(file, "UTF-8"));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    } finally {
+      PrettyPrint.setPreallocateOutput(preallocate);
+      PrettyPrint.setOutputBufferSize(size);
+    }
+  }
+  
+  /**
+   * Test that a failed stream-mode run leaves no old content or
+   * preallocated bytes in an existing larger output file.
+   */
+  public void testOutputFileAborted() {
+    System.out.println("testOutputFileAborted");
+    boolean preallocate = PrettyPrint.getPreallocateOutput();
+    int size = PrettyPrint.getOutputBufferSize();
+    try {
+      Properties prop = PrettyPrint.getSetting("pretty");
+      String xml = FileUtils.readFileToString(new File(testdir+"/in1.xml"), "UTF-8");
+      String expected = PrettyPrint.execute((Properties)prop.clone(), xml);
+      File in = new File(tmpdir+"/in-malformed.xml");
+      FileUtils.writeStringToFile(in, xml.substring(0, xml.length() * 2 / 3)+"<</", "UTF-8");
+      File file = new File(tmpdir+"/out-aborted.xml");
+      prop.setProperty(PrettyPrint.STREAM, "true");
+      prop.setProperty(PrettyPrint.INPUT, in.getPath());
+      prop.setProperty(PrettyPrint.OUTPUT, file.getPath());
+      PrettyPrint.setOutputBufferSize(100);
+      boolean[] preallocates = new boolean[]{false, true};
+      for (int i=0; i<preallocates.length; i++) {
+        StringBuffer stale = new StringBuffer();
+        while (stale.length() < 2 * expected.length()) {
+          stale.append("stale ");
+        }
+        FileUtils.writeStringToFile(file, stale.toString(), "UTF-8");
+        PrettyPrint.setPreallocateOutput(preallocates[i]);
+        try {
+          PrettyPrint.execute((Properties)prop.clone());
+          fail("malformed input accepted");
+        } catch (Exception e) {
+        }
+        String written = FileUtils.readFileToString(file, "UTF-8");
+        assertTrue(written.length() > 0);
+        assertTrue(written, expected.startsWith(written));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    } finally {
+      PrettyPrint.setPreallocateOutput(preallocate);
+      PrettyPrint.setOutputBufferSize(size);
+    }
+  }
+  
 }
@@ -0,0 +1,213 @@
+/*
+ * PrettyPrinterTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+import org.jdom.transform.JDOMSource;
+
+/**
+ * Tests of PrettyPrinter.
+ */
+public class PrettyPrinterTest extends TestCase implements PropertyNames {
+
+  public PrettyPrinterTest(String testName) {
+    super(testName);
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(PrettyPrinterTest.class);
+
+    return suite;
+  }
+
+  private static String corpus() throws Exception {
+    StringWriter sw = new StringWriter();
+    new CorpusGenerator(5).setSize(20000).setNamespaces(2).setCommentRatio(0.2)
+        .setPIRatio(0.1).setCDATARatio(0.2).generate(sw);
+    return sw.toString();
+  }
+
+  /**
+   * Test that each format method gives the output of PrettyPrint.execute.
+   */
+  public void testFormat() {
+    System.out.println("testFormat");
+    try {
+      String input = corpus();
+      String[] settings = PrettyPrint.getSettings();
+      String[] transforms = new String[]{null, "sort-elements", "sort-attributes;sort-elements"};
+      for (int i=0; i<settings.length; i++) {
+        for (int j=0; j<transforms.length; j++) {
+          for (int k=0; k<2; k++) {
+            PrettyPrinter.Builder builder = new PrettyPrinter.Builder().setSetting(settings[i]);
+            Properties prop = (Properties)PrettyPrint.getSetting(settings[i]).clone();
+            if (transforms[j] != null) {
+              builder.setProperty(TRANSFORM, transforms[j]);
+              prop.setProperty(TRANSFORM, transforms[j]);
+            }
+            if (k == 1) {
+              builder.setProperty(STREAM, "true");
+              prop.setProperty(STREAM, "true");
+            }
+            PrettyPrinter printer = builder.build();
+            assertEquals(k == 1, printer.isStream());
+            String expected = PrettyPrint.execute(prop, input);
+            String encoding = printer.getFormat().getEncoding();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            printer.format(new ByteArrayInputStream(input.getBytes("UTF-8")), baos);
+            assertEquals(expected, baos.toString(encoding));
+            StringWriter sw = new StringWriter();
+            printer.format(new StringReader(input), sw);
+            assertEquals(expected, sw.toString());
+            baos.reset();
+            printer.format(new StreamSource(new StringReader(input)), new StreamResult(baos));
+            assertEquals(expected, baos.toString(encoding));
+            // copied by an identity transformation which keeps no CDATA
+            String simple = "<a><!-- c --><b x=\"1\"> t </b><?p d?></a>";
+            Document doc = new SAXBuilder().build(new StringReader(simple));
+            sw = new StringWriter();
+            printer.format(new JDOMSource(doc), new StreamResult(sw));
+            assertEquals(PrettyPrint.execute(prop, simple), sw.toString());
+          }
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that a printer is shared by threads.
+   */
+  public void testConcurrentFormat() {
+    System.out.println("testConcurrentFormat");
+    try {
+      final String input = corpus();
+      final PrettyPrinter printer = new PrettyPrinter.Builder().setSetting("pretty")
+          .setProperty(TRANSFORM, "sort-elements").build();
+      final String expected;
+      StringWriter sw = new StringWriter();
+      printer.format(new StringReader(input), sw);
+      expected = sw.toString();
+      final ArrayList failures = new ArrayList();
+      Thread[] threads = new Thread[4];
+      for (int i=0; i<threads.length; i++) {
+        threads[i] = new Thread() {
+          public void run() {
+            try {
+              for (int j=0; j<10; j++) {
+                StringWriter sw = new StringWriter();
+                printer.format(new StringReader(input), sw);
+                if (!expected.equals(sw.toString())) {
+                  throw new Exception("different output");
+                }
+              }
+            } catch (Exception e) {
+              synchronized (failures) {
+                failures.add(e.toString());
+              }
+            }
+          }
+        };
+        threads[i].start();
+      }
+      for (int i=0; i<threads.length; i++) {
+        threads[i].join();
+      }
+      assertEquals(Collections.EMPTY_LIST, failures);
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test of Builder.
+   */
+  public void testBuilder() {
+    System.out.println("testBuilder");
+    try {
+      Properties prop = new Properties();
+      prop.setProperty(INDENT, "3");
+      prop.setProperty(OUTPUT, "never.xml");
+      PrettyPrinter printer = new PrettyPrinter.Builder().setProperties(prop)
+          .setProperty(LINE_SEPARATOR, "\n").build();
+      assertEquals("   ", printer.getFormat().getIndent());
+      assertFalse(printer.getProperties().containsKey(OUTPUT));
+      prop.setProperty(INDENT, "4");
+      assertEquals("   ", printer.getFormat().getIndent());
+      StringWriter sw = new StringWriter();
+      printer.format(new StringReader("<a><b/></a>"), sw);
+      assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<a>\n   <b />\n</a>\n", sw.toString());
+      try {
+        printer.format(new StreamSource(new StringReader("<a/>")), new DOMResult());
+        fail("not a stream result");
+      } catch (IllegalArgumentException e) {
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+    try {
+      new PrettyPrinter.Builder().setSetting("unknown");
+      fail("unknown setting");
+    } catch (Exception e) {
+    }
+    try {
+      new PrettyPrinter.Builder().setProperty(INDENT, "100").build();
+      fail("bad indent");
+    } catch (Exception e) {
+    }
+    try {
+      new PrettyPrinter.Builder().setProperty(TRANSFORM, "unknown.xslt").build();
+      fail("unknown stylesheet");
+    } catch (Exception e) {
+    }
+  }
+
+  /**
+   * Test that pooled parsers are reused after errors and that
+   * loadExternalDTD controls reading the DTD.
+   */
+  public void testParsers() {
+    System.out.println("testParsers");
+    try {
+      String input = "<!DOCTYPE a SYSTEM \"missing.dtd\"><a><b/></a>";
+      for (int k=0; k<2; k++) {
+        PrettyPrinter reading = new PrettyPrinter.Builder().setSetting("pretty")
+            .setProperty(STREAM, String.valueOf(k == 1)).build();
+        PrettyPrinter skipping = new PrettyPrinter.Builder().setSetting("pretty")
+            .setProperty(STREAM, String.valueOf(k == 1)).setProperty(LOAD_EXTERNAL_DTD, "false").build();
+        for (int i=0; i<3; i++) {
+          try {
+            reading.format(new StringReader(input), new StringWriter());
+            fail("missing DTD read");
+          } catch (Exception e) {
+          }
+          try {
+            reading.format(new StringReader("<a><b></a>"), new StringWriter());
+            fail("not wellformed");
+          } catch (Exception e) {
+          }
+          StringWriter sw = new StringWriter();
+          skipping.format(new StringReader(input), sw);
+          assertTrue(sw.toString().indexOf("<b />") > 0);
+          sw = new StringWriter();
+          reading.format(new StringReader("<a><c/></a>"), sw);
+          assertTrue(sw.toString().indexOf("<c />") > 0);
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * PrettyXMLHandlerTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares streamed output with output from the JDOM document.
+ */
+public class PrettyXMLHandlerTest extends TestCase {
+
+  static final String XML =
+      "<?xml version=\"1.0\"?>\n" +
+      "<!DOCTYPE root [\n" +
+      "  <!ENTITY e \"entity text\">\n" +
+      "]>\n" +
+      "<!-- before root -->\n" +
+      "<?pi before root?>\n" +
+      "<root xmlns=\"urn:a\" xmlns:b=\"urn:b\" z=\"1\" a=\"&lt;&amp;&quot;\">\n" +
+      "  <empty/>\n" +
+      "  <blank>   </blank>\n" +
+      "  <b:child b:x=\"2\" y=\"3\">  some   text  </b:child>\n" +
+      "  <mixed>text <i>in</i> between &e; <![CDATA[ <cdata> ]]>tail</mixed>\n" +
+      "  <plain xmlns=\"\"><inner xmlns:c=\"urn:c\" c:d=\"4\"/></plain>\n" +
+      "  <pre xml:space=\"preserve\">  keep\n  <this>  as is </this>  </pre>\n" +
+      "  <!-- comment -->\n" +
+      "  <?pi data?>\n" +
+      "  <deep><deeper><deepest a=\"1\" b=\"2\">x</deepest></deeper></deep>\n" +
+      "  text\n" +
+      "</root>\n" +
+      "<!-- after root -->\n";
+
+  private String testdir;
+
+  public PrettyXMLHandlerTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.dir";
+    testdir = System.getProperty(name);
+    if (testdir == null || !new File(testdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+testdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(PrettyXMLHandlerTest.class);
+
+    return suite;
+  }
+
+  private void assertSame(Properties prop, String xml) throws Exception {
+    Properties tree = (Properties)prop.clone();
+    Properties stream = (Properties)prop.clone();
+    stream.setProperty(PrettyPrint.STREAM, "true");
+    assertEquals(PrettyPrint.execute(tree, xml), PrettyPrint.execute(stream, xml));
+  }
+
+  /**
+   * Test streaming with the built-in settings without transformations.
+   */
+  public void testSettings() {
+    System.out.println("testSettings");
+    try {
+      String[] documents = new String[]{
+        XML,
+        FileUtils.readFileToString(new File(testdir+"/in1.xml"), "UTF-8"),
+        FileUtils.readFileToString(new File(testdir+"/family.xml"), "UTF-8")
+      };
+      String[] settings = PrettyPrint.getSettings();
+      for (int i=0; i<settings.length; i++) {
+        Properties prop = PrettyPrint.getSetting(settings[i]);
+        if (prop.containsKey(PrettyPrint.TRANSFORM)) {
+          continue;
+        }
+        for (int j=0; j<documents.length; j++) {
+          assertSame(prop, documents[j]);
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test streaming with format options.
+   */
+  public void testOptions() {
+    System.out.println("testOptions");
+    try {
+      String[] textModes = PrettyPrint.TEXT_MODES;
+      for (int i=0; i<textModes.length; i++) {
+        Properties prop = new Properties();
+        prop.setProperty(PrettyPrint.TEXT_MODE, textModes[i]);
+        assertSame(prop, XML);
+        prop.setProperty(PrettyPrint.INDENT, "4");
+        prop.setProperty(PrettyPrint.LINE_SEPARATOR, "\n");
+        assertSame(prop, XML);
+        prop.setProperty(PrettyPrint.EXPAND_EMPTY_ELEMENTS, "true");
+        prop.setProperty(PrettyPrint.OMIT_ENCODING, "true");
+        assertSame(prop, XML);
+        prop.setProperty(PrettyPrint.INDENT_ATTRIBUTES, "true");
+        prop.setProperty(PrettyPrint.SORT_ATTRIBUTES, "true");
+        assertSame(prop, XML);
+        prop.setProperty(PrettyPrint.OMIT_DECLARATION, "true");
+        prop.setProperty(PrettyPrint.ENCODING, "ISO-8859-1");
+        assertSame(prop, XML + "<!-- \u00e6\u00f8\u00e5 -->");
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test streaming with sorted attributes repeated across elements.
+   */
+  public void testSortAttributes() {
+    System.out.println("testSortAttributes");
+    try {
+      StringBuffer xml = new StringBuffer("<r xmlns:p=\"urn:p\" xmlns:q=\"urn:q\">");
+      for (int i=0; i<3; i++) {
+        xml.append("<e c=\"1\" b=\"2\" a=\"3\"/>");
+        xml.append("<e a=\"1\" c=\"2\" b=\"3\"/>");
+        xml.append("<e q:b=\"1\" p:b=\"2\" b=\"3\" xmlns:x=\"urn:x\" x:a=\"4\"/>");
+        xml.append("<e p:b=\"1\" b=\"2\" q:b=\"3\"/>");
+        xml.append("<e b=\"1\" a=\"2\"/>");
+      }
+      xml.append("</r>");
+      Properties prop = new Properties();
+      prop.setProperty(PrettyPrint.SORT_ATTRIBUTES, "true");
+      assertSame(prop, xml.toString());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test streaming through chained stylesheets.
+   */
+  public void testTransform() {
+    System.out.println("testTransform");
+    try {
+      String[] documents = new String[]{
+        XML,
+        FileUtils.readFileToString(new File(testdir+"/in1.xml"), "UTF-8"),
+        FileUtils.readFileToString(new File(testdir+"/family.xml"), "UTF-8")
+      };
+      String[] transforms = new String[]{
+        testdir+"/sort-elements.xslt",
+        testdir+"/sort-attributes.xslt;"+testdir+"/sort-elements.xslt",
+        "sort-attributes.xslt;sort-elements.xslt"
+      };
+      Properties prop = (Properties)PrettyPrint.getSetting("indented").clone();
+      for (int i=0; i<transforms.length; i++) {
+        prop.setProperty(PrettyPrint.TRANSFORM, transforms[i]);
+        for (int j=0; j<documents.length; j++) {
+          assertSame(prop, documents[j]);
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test streaming from file to file.
+   */
+  public void testFile() {
+    System.out.println("testFile");
+    try {
+      String tmpdir = System.getProperty("dk.hippogrif.prettyxml.app.MainTest.tmp");
+      Properties prop = new Properties();
+      prop.setProperty(PrettyPrint.INDENT, "2");
+      prop.setProperty(PrettyPrint.TEXT_MODE, "TRIM");
+      prop.setProperty(PrettyPrint.INDENT_ATTRIBUTES, "true");
+      prop.setProperty(PrettyPrint.SORT_ATTRIBUTES, "true");
+      prop.setProperty(PrettyPrint.STREAM, "true");
+      prop.setProperty(PrettyPrint.INPUT, testdir+"/in1.xml");
+      prop.setProperty(PrettyPrint.OUTPUT, tmpdir+"/stream1.xml");
+      PrettyPrint.execute(prop);
+      assertTrue(FileUtils.contentEquals(new File(testdir+"/out1.xml"), new File(tmpdir+"/stream1.xml")));
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
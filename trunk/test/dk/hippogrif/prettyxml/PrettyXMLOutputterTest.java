@@ -0,0 +1,278 @@
+/*
+ * PrettyXMLOutputterTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.jdom.*;
+import org.jdom.input.*;
+import org.jdom.output.*;
+
+/**
+ * Tests of PrettyXMLOutputter.
+ */
+public class PrettyXMLOutputterTest extends TestCase {
+
+  static final String XML =
+      "<root z=\"1\" a=\"2\">\n" +
+      "  <pre xml:space=\"preserve\">  keep  <this a=\"1\"/>  </pre>\n" +
+      "  <?javax.xml.transform.disable-output-escaping?>\n" +
+      "  <raw>&lt;not escaped&gt;</raw>\n" +
+      "  <?javax.xml.transform.enable-output-escaping?>\n" +
+      "  <deep><deeper b=\"2\" a=\"1\"><deepest>&lt;escaped&gt;</deepest></deeper></deep>\n" +
+      "</root>\n";
+
+  private String testdir;
+
+  public PrettyXMLOutputterTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.dir";
+    testdir = System.getProperty(name);
+    if (testdir == null || !new File(testdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+testdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(PrettyXMLOutputterTest.class);
+
+    return suite;
+  }
+
+  private PrettyXMLOutputter mkOutputter() {
+    Format format = Format.getPrettyFormat();
+    format.setIndent("   ");
+    PrettyXMLOutputter outp = new PrettyXMLOutputter(format);
+    outp.setSortAttributes(true);
+    outp.setIndentAttributes(true);
+    return outp;
+  }
+
+  /**
+   * Test that a shared outputter gives identical output under contention.
+   */
+  public void testConcurrentOutput() {
+    System.out.println("testConcurrentOutput");
+    try {
+      SAXBuilder builder = new SAXBuilder();
+      final Document[] docs = new Document[]{
+        builder.build(new StringReader(XML)),
+        builder.build(new File(testdir+"/in1.xml")),
+        builder.build(new File(testdir+"/family.xml"))
+      };
+      final String[] expected = new String[docs.length];
+      for (int i=0; i<docs.length; i++) {
+        expected[i] = mkOutputter().outputString(docs[i]);
+      }
+      assertTrue(expected[0].indexOf("<not escaped>") > 0);
+      assertTrue(expected[0].indexOf("&lt;escaped&gt;") > 0);
+      final PrettyXMLOutputter outp = mkOutputter();
+      final List errors = Collections.synchronizedList(new ArrayList());
+      Thread[] threads = new Thread[8];
+      for (int i=0; i<threads.length; i++) {
+        final int offset = i;
+        threads[i] = new Thread() {
+          public void run() {
+            for (int j=0; j<300; j++) {
+              int k = (j+offset) % docs.length;
+              String s = outp.outputString(docs[k]);
+              if (!expected[k].equals(s)) {
+                errors.add(s);
+              }
+              s = outp.outputString(docs[k].getRootElement());
+              if (expected[k].indexOf(s) < 0) {
+                errors.add(s);
+              }
+            }
+          }
+        };
+      }
+      for (int i=0; i<threads.length; i++) {
+        threads[i].start();
+      }
+      for (int i=0; i<threads.length; i++) {
+        threads[i].join();
+      }
+      assertTrue("output differs under contention: "+errors.size(), errors.isEmpty());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test attribute sorting and escaping for repeated and differing attribute names.
+   */
+  public void testAttributes() {
+    System.out.println("testAttributes");
+    try {
+      String xml = "<r xmlns:b=\"urn:b\">" +
+          "<e z=\"1\" b:a=\"&lt;&amp;&gt;\" a=\"&quot;\" ab=\"x&#10;y&#9;\"/>" +
+          "<e z=\"2\" b:a=\"3\" a=\"4\" ab=\"5\"/>" +
+          "<e ab=\"6\" a=\"7\" z=\"8\" b:a=\"\u00e6\"/>" +
+          "<e z=\"9\" b:a=\"10\" a=\"11\" ab=\"12\"/></r>";
+      Document doc = new SAXBuilder().build(new StringReader(xml));
+      Format format = Format.getRawFormat();
+      format.setEncoding("US-ASCII");
+      PrettyXMLOutputter outp = new PrettyXMLOutputter(format);
+      assertEquals(new XMLOutputter(format).outputString(doc), outp.outputString(doc));
+      outp.setSortAttributes(true);
+      for (int i=0; i<2; i++) {
+        assertEquals("<r xmlns:b=\"urn:b\">" +
+            "<e a=\"&quot;\" ab=\"x&#xA;y&#x9;\" b:a=\"&lt;&amp;&gt;\" z=\"1\" />" +
+            "<e a=\"4\" ab=\"5\" b:a=\"3\" z=\"2\" />" +
+            "<e a=\"7\" ab=\"6\" b:a=\"&#xe6;\" z=\"8\" />" +
+            "<e a=\"11\" ab=\"12\" b:a=\"10\" z=\"9\" /></r>",
+            outp.outputString(doc.getRootElement()));
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that without sorting and indenting attributes elements are output as by XMLOutputter.
+   */
+  public void testSameAsXMLOutputter() {
+    System.out.println("testSameAsXMLOutputter");
+    try {
+      StringWriter sw = new StringWriter();
+      new CorpusGenerator(11).setSize(30000).setDepth(12).setFanOut(2).setNamespaces(2)
+          .setCDATARatio(0.2).setCommentRatio(0.2).setPIRatio(0.2).generate(sw);
+      SAXBuilder builder = new SAXBuilder();
+      Document[] docs = new Document[]{
+        builder.build(new StringReader(XML)),
+        builder.build(new File(testdir+"/in1.xml")),
+        builder.build(new StringReader(sw.toString())),
+        builder.build(new StringReader(deep(600)))
+      };
+      Format pretty = Format.getPrettyFormat();
+      pretty.setIndent("\t");
+      pretty.setLineSeparator("\n");
+      Format empty = Format.getPrettyFormat();
+      empty.setIndent("");
+      Format[] formats = new Format[]{
+        Format.getPrettyFormat(), Format.getCompactFormat(), Format.getRawFormat(), pretty, empty
+      };
+      for (int i=0; i<docs.length; i++) {
+        for (int j=0; j<formats.length; j++) {
+          PrettyXMLOutputter outp = new PrettyXMLOutputter(formats[j]);
+          // documents differ by the final line separator only
+          String expected = new XMLOutputter(formats[j]).outputString(docs[i].getRootElement());
+          assertEquals(expected, outp.outputString(docs[i].getRootElement()));
+          assertEquals(expected, outp.outputString(docs[i].getRootElement()));
+        }
+      }
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  private static String deep(int depth) throws IOException {
+    StringWriter sw = new StringWriter();
+    new CorpusGenerator(13).setSize(10).setDepth(depth).setFanOut(1).setNamespaces(2)
+        .setCDATARatio(0.2).setCommentRatio(0.2).setPIRatio(0.2).generate(sw);
+    return sw.toString();
+  }
+
+  /**
+   * Test that documents deeper than the stack allows recursion to are
+   * output, and alike from a tree and streamed.
+   */
+  public void testDeep() {
+    System.out.println("testDeep");
+    try {
+      final Document doc = new SAXBuilder().build(new StringReader(deep(20000)));
+      Format format = Format.getPrettyFormat();
+      format.setIndent("");
+      final PrettyXMLOutputter outp = new PrettyXMLOutputter(format);
+      final StringWriter tree = new StringWriter();
+      final StringWriter stream = new StringWriter();
+      final Throwable[] error = new Throwable[1];
+      Thread thread = new Thread(null, new Runnable() {
+        public void run() {
+          try {
+            outp.output(doc, tree);
+            PrettyXMLHandler handler = new PrettyXMLHandler(outp, stream);
+            DocumentWalker.walk(doc, handler, handler);
+          } catch (Throwable e) {
+            error[0] = e;
+          }
+        }
+      }, "deep", 256 * 1024);
+      thread.start();
+      thread.join();
+      if (error[0] != null) {
+        fail(error[0].toString());
+      }
+      assertTrue(tree.toString().length() > 20000 * 6);
+      assertEquals(tree.toString(), stream.toString());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that documents deeper than the stack allows recursion to are
+   * sorted by the native sort of the sorted setting.
+   */
+  public void testDeepSorted() {
+    System.out.println("testDeepSorted");
+    try {
+      int depth = 20000;
+      StringBuffer in = new StringBuffer();
+      StringBuffer expected = new StringBuffer();
+      for (int i=0; i<depth; i++) {
+        in.append("<e><s/>");
+        expected.append("<e>");
+      }
+      in.append("<e>x</e>");
+      expected.append("<e>x</e>");
+      for (int i=0; i<depth; i++) {
+        in.append("</e>");
+        expected.append("<s /></e>");
+      }
+      final String input = in.toString();
+      final Properties prop = (Properties)PrettyPrint.getSetting("sorted").clone();
+      prop.setProperty(PrettyPrint.INDENT, "0");
+      final String[] output = new String[1];
+      final Throwable[] error = new Throwable[1];
+      Thread thread = new Thread(null, new Runnable() {
+        public void run() {
+          try {
+            output[0] = PrettyPrint.execute(prop, input);
+          } catch (Throwable e) {
+            error[0] = e;
+          }
+        }
+      }, "deep", 256 * 1024);
+      thread.start();
+      thread.join();
+      if (error[0] != null) {
+        fail(error[0].toString());
+      }
+      assertTrue(output[0].indexOf(expected.toString()) > 0);
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test output of a processing instruction leaves the format unchanged.
+   */
+  public void testOutputProcessingInstruction() {
+    System.out.println("testOutputProcessingInstruction");
+    PrettyXMLOutputter outp = mkOutputter();
+    ProcessingInstruction pi = new ProcessingInstruction("javax.xml.transform.disable-output-escaping", "");
+    assertEquals("<?javax.xml.transform.disable-output-escaping?>", outp.outputString(pi));
+    assertFalse(outp.getFormat().getIgnoreTrAXEscapingPIs());
+    assertEquals("<?a b?>", outp.outputString(new ProcessingInstruction("a", "b")));
+  }
+
+}
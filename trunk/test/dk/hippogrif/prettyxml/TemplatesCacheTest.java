@@ -0,0 +1,161 @@
+/*
+ * TemplatesCacheTest.java
+ * JUnit based test
+ */
+
+package dk.hippogrif.prettyxml;
+
+import junit.framework.*;
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests of TemplatesCache.
+ */
+public class TemplatesCacheTest extends TestCase {
+
+  private String testdir;
+  private String tmpdir;
+
+  public TemplatesCacheTest(String testName) {
+    super(testName);
+  }
+
+  protected void setUp() throws Exception {
+    String name = "dk.hippogrif.prettyxml.app.MainTest.dir";
+    testdir = System.getProperty(name);
+    if (testdir == null || !new File(testdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+testdir);
+    }
+    name = "dk.hippogrif.prettyxml.app.MainTest.tmp";
+    tmpdir = System.getProperty(name);
+    if (tmpdir == null || !new File(tmpdir).isDirectory()) {
+      throw new Exception("cannot find dir "+name+"="+tmpdir);
+    }
+  }
+
+  public static Test suite() {
+    TestSuite suite = new TestSuite(TemplatesCacheTest.class);
+
+    return suite;
+  }
+
+  /**
+   * Test hits, misses and recompilation of a modified stylesheet.
+   */
+  public void testGet() {
+    System.out.println("testGet");
+    try {
+      File file = new File(tmpdir+"/cached.xslt");
+      FileUtils.copyFile(new File(testdir+"/sort-elements.xslt"), file);
+      TemplatesCache cache = new TemplatesCache(4);
+      Object t1 = cache.get(file);
+      assertSame(t1, cache.get(file));
+      assertSame(t1, cache.get(new File(tmpdir+"/./cached.xslt")));
+      assertEquals(1, cache.getMisses());
+      assertEquals(2, cache.getHits());
+      file.setLastModified(file.lastModified()-10000);
+      assertNotSame(t1, cache.get(file));
+      assertEquals(2, cache.getMisses());
+      assertEquals(1, cache.size());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+    try {
+      new TemplatesCache(4).get(new File(tmpdir+"/unknown.xslt"));
+      fail("unknown stylesheet");
+    } catch (Exception e) {
+    }
+  }
+
+  /**
+   * Test eviction of the least recently used stylesheet.
+   */
+  public void testEviction() {
+    System.out.println("testEviction");
+    try {
+      File[] files = new File[3];
+      for (int i=0; i<files.length; i++) {
+        files[i] = new File(tmpdir+"/cached"+i+".xslt");
+        FileUtils.copyFile(new File(testdir+"/sort-attributes.xslt"), files[i]);
+      }
+      TemplatesCache cache = new TemplatesCache(2);
+      cache.get(files[0]);
+      cache.get(files[1]);
+      cache.get(files[0]);
+      cache.get(files[2]);
+      assertEquals(2, cache.size());
+      assertEquals(3, cache.getMisses());
+      cache.get(files[0]);
+      assertEquals(3, cache.getMisses());
+      cache.get(files[1]);
+      assertEquals(4, cache.getMisses());
+      cache.setMaxSize(1);
+      assertEquals(1, cache.size());
+      cache.get(files[1]);
+      assertEquals(4, cache.getMisses());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that no lookup is lost from the counters under concurrent use.
+   */
+  public void testConcurrentCount() {
+    System.out.println("testConcurrentCount");
+    try {
+      final File file = new File(testdir+"/sort-elements.xslt");
+      final TemplatesCache cache = new TemplatesCache(4);
+      final Exception[] failure = new Exception[1];
+      Thread[] threads = new Thread[4];
+      for (int i=0; i<threads.length; i++) {
+        threads[i] = new Thread(new Runnable() {
+          public void run() {
+            try {
+              for (int j=0; j<5000; j++) {
+                cache.get(file);
+              }
+            } catch (Exception e) {
+              failure[0] = e;
+            }
+          }
+        });
+        threads[i].start();
+      }
+      for (int i=0; i<threads.length; i++) {
+        threads[i].join();
+      }
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      assertEquals(threads.length*5000, cache.getHits()+cache.getMisses());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Test that execute compiles a stylesheet file only once.
+   */
+  public void testExecute() {
+    System.out.println("testExecute");
+    try {
+      Properties prop = new Properties();
+      prop.setProperty(PrettyPrint.TRANSFORM, testdir+"/sort-elements.xslt");
+      String xml = "<root><b/><a/></root>";
+      TemplatesCache cache = PrettyPrint.getTemplatesCache();
+      String s = PrettyPrint.execute(prop, xml);
+      assertTrue(s.indexOf("<a />") < s.indexOf("<b />"));
+      long misses = cache.getMisses();
+      long hits = cache.getHits();
+      assertEquals(s, PrettyPrint.execute(prop, xml));
+      assertEquals(misses, cache.getMisses());
+      assertEquals(hits+1, cache.getHits());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+
+}
@@ -11,6 +11,7 @@ import java.net.*;
 import java.util.*;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.jdom.*;
 import org.jdom.input.*;
 import org.jdom.output.*;
@@ -127,4 +128,142 @@ public class MainTest extends TestCase {
     }
   }
   
+  /**
+   * Test of batch method, of class dk.hippogrif.prettyxml.Main.
+   */
+  public void testBatch() {
+    System.out.println("testBatch");
+    try {
+      File dir = new File(tmpdir+"/batch");
+      FileUtils.deleteDirectory(dir);
+      Main.go(new String[]{"-a","-s","-w","2","-b",dir.getPath(),testdir+"/in1.xml",testdir+"/*.xslt"});
+      assertTrue(FileUtils.contentEquals(new File(testdir+"/out1.xml"), new File(dir, "in1.xml")));
+      assertTrue(new File(dir, "sort-elements.xslt").isFile());
+      assertTrue(new File(dir, "sort-attributes.xslt").isFile());
+      Main.go(new String[]{"-b",dir.getPath()+"/again",dir.getPath()});
+      assertTrue(new File(dir, "again/in1.xml").isFile());
+      assertFalse(new File(dir, "again/sort-elements.xslt").isFile());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+    try {
+      Main.go(new String[]{"-b",tmpdir+"/batch",testdir+"/ex.properties",testdir+"/in1.xml"});
+      fail("not xml");
+    } catch (Exception e) {
+      assertTrue(new File(tmpdir+"/batch/in1.xml").isFile());
+    }
+  }
+  
+  /**
+   * Test that inputs written to the same output file are refused.
+   */
+  public void testBatchDuplicates() {
+    System.out.println("testBatchDuplicates");
+    try {
+      File dir = new File(tmpdir+"/batchdup");
+      FileUtils.deleteDirectory(dir);
+      File a = new File(dir, "a/x.xml");
+      File b = new File(dir, "b/x.xml");
+      FileUtils.copyFile(new File(testdir+"/in1.xml"), a);
+      FileUtils.copyFile(new File(testdir+"/in1.xml"), b);
+      Batch batch = new Batch(new Properties(), new File(dir, "out"), 2);
+      batch.addInput(a.getPath());
+      // the same file again is ignored
+      batch.addInput(dir.getPath()+"/a/../a/x.xml");
+      assertEquals(1, batch.size());
+      try {
+        batch.addInput(b.getPath());
+        fail("same output accepted");
+      } catch (Exception e) {
+        assertTrue(e.getMessage(), e.getMessage().indexOf("x.xml") > 0);
+      }
+      // a/x.xml is added already
+      batch.addInput(dir.getPath());
+      assertEquals(2, batch.size());
+      assertEquals(0, batch.execute());
+      assertTrue(new File(dir, "out/x.xml").isFile());
+      assertTrue(new File(dir, "out/b/x.xml").isFile());
+    } catch (Exception e) {
+      fail(e.toString());
+    }
+  }
+  
+  private static int post(URL url, byte[] body, OutputStream out) throws IOException {
+    HttpURLConnection con = (HttpURLConnection)url.openConnection();
+    con.setDoOutput(true);
+    con.setRequestMethod(body == null ? "GET" : "POST");
+    if (body != null) {
+      con.getOutputStream().write(body);
+    }
+    int status = con.getResponseCode();
+    InputStream in = status == 200 ? con.getInputStream() : con.getErrorStream();
+    out.write(IOUtils.toByteArray(in));
+    in.close();
+    return status;
+  }
+  
+  /**
+   * Test of Server, of class dk.hippogrif.prettyxml.app.Server.
+   */
+  public void testServer() {
+    System.out.println("testServer");
+    Server server = null;
+    try {
+      Properties prop = Main.getProperties(Main.getCmdLine(new String[]{"-a","-s","-d","0"}));
+      server = new Server(prop, 0, 2);
+      server.start();
+      String base = "http://127.0.0.1:"+server.getPort();
+      byte[] in1 = FileUtils.readFileToString(new File(testdir+"/in1.xml"), "ISO-8859-1").getBytes("ISO-8859-1");
+      byte[] out1 = FileUtils.readFileToString(new File(testdir+"/out1.xml"), "ISO-8859-1").getBytes("ISO-8859-1");
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (int i=0; i<3; i++) {
+        out.reset();
+        assertEquals(200, post(new URL(base+"/format"), in1, out));
+        assertTrue(Arrays.equals(out1, out.toByteArray()));
+      }
+      out.reset();
+      assertEquals(200, post(new URL(base+"/format?setting=raw&stream=true"), "<a>\n<b/></a>".getBytes("UTF-8"), out));
+      assertTrue(out.toString("UTF-8").indexOf("<b /></a>") > 0);
+      assertEquals(400, post(new URL(base+"/format"), "<a>".getBytes("UTF-8"), out));
+      assertEquals(400, post(new URL(base+"/format?setting=none"), in1, out));
+      assertEquals(400, post(new URL(base+"/format?output=x.xml"), in1, out));
+      assertEquals(400, post(new URL(base+"/format?transform="+URLEncoder.encode(testdir+"/sort-elements.xslt", "UTF-8")), in1, out));
+      assertEquals(200, post(new URL(base+"/format?transform=sort-elements"), in1, out));
+      assertEquals(404, post(new URL(base+"/other"), in1, out));
+      server.setMaxRequestSize(10);
+      assertEquals(413, post(new URL(base+"/format"), in1, out));
+      out.reset();
+      assertEquals(200, post(new URL(base+"/health"), null, out));
+      assertEquals("ok\n", out.toString("UTF-8"));
+      out.reset();
+      assertEquals(200, post(new URL(base+"/metrics"), null, out));
+      assertTrue(out.toString("UTF-8").indexOf("requests 6\n") >= 0);
+      assertTrue(out.toString("UTF-8").indexOf("failures 1\n") >= 0);
+      server.setMaxRequestSize(65536);
+      File secret = new File(tmpdir, "secret.txt");
+      FileUtils.writeStringToFile(secret, "secret", "UTF-8");
+      String entity = "<!DOCTYPE r [<!ENTITY x SYSTEM \""+secret.toURI()+"\">]><r>&x;</r>";
+      out.reset();
+      assertEquals(400, post(new URL(base+"/format"), entity.getBytes("UTF-8"), out));
+      assertTrue(out.toString("UTF-8").indexOf("secret\n") < 0);
+      out.reset();
+      assertEquals(400, post(new URL(base+"/format?stream=true"), entity.getBytes("UTF-8"), out));
+      assertTrue(out.toString("UTF-8").indexOf("secret\n") < 0);
+      String parameter = "<!DOCTYPE r [<!ENTITY % x SYSTEM \""+secret.toURI()+"\"> %x;]><r/>";
+      assertEquals(400, post(new URL(base+"/format"), parameter.getBytes("UTF-8"), out));
+      String dtd = "<!DOCTYPE r SYSTEM \""+new File(tmpdir, "none.dtd").toURI()+"\"><r/>";
+      assertEquals(200, post(new URL(base+"/format"), dtd.getBytes("UTF-8"), out));
+      assertEquals(400, post(new URL(base+"/format?loadExternalDTD=true"), dtd.getBytes("UTF-8"), out));
+    } catch (Exception e) {
+      fail(e.toString());
+    } finally {
+      try {
+        if (server != null) {
+          server.stop();
+        }
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+  
 }